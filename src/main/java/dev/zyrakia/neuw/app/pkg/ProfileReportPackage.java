@@ -0,0 +1,93 @@
+package dev.zyrakia.neuw.app.pkg;
+
+import static org.jline.jansi.Ansi.ansi;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.jline.jansi.Ansi.Color;
+
+import dev.zyrakia.neuw.app.TerminalApp;
+import dev.zyrakia.neuw.evaluation.ExpressionProfiler;
+
+/**
+ * This package prints the hottest expressions recorded by a profiler, and
+ * optionally exports every recorded expression as JSON.
+ */
+public class ProfileReportPackage implements TerminalPackage<Void> {
+
+    /**
+     * The amount of expressions printed when none is specified.
+     */
+    public static final int DEFAULT_LIMIT = 20;
+
+    /**
+     * Represents the profiler that this package will report on.
+     */
+    private final ExpressionProfiler profiler;
+
+    /**
+     * Represents the maximum amount of expressions that will be printed.
+     */
+    private final int limit;
+
+    /**
+     * Represents the optional path that the JSON report will be written to.
+     */
+    private final Path jsonPath;
+
+    /**
+     * Creates a new package that will report on the given profiler when
+     * executed.
+     *
+     * @param profiler the profiler to report on
+     * @param limit the maximum amount of expressions to print
+     * @param jsonPath the path to write the JSON report to, or {@code null} to
+     * not write one
+     */
+    public ProfileReportPackage(ExpressionProfiler profiler, int limit,
+            Path jsonPath) {
+        this.profiler = profiler;
+        this.limit = limit;
+        this.jsonPath = jsonPath;
+    }
+
+    /**
+     * Creates a new package that will print the hottest expressions of the
+     * given profiler when executed.
+     *
+     * @param profiler the profiler to report on
+     */
+    public ProfileReportPackage(ExpressionProfiler profiler) {
+        this(profiler, DEFAULT_LIMIT, null);
+    }
+
+    @Override
+    public Void execute(TerminalApp app) {
+        PrintWriter writer = app.writer();
+        writer.println(ansi().newline()
+                .fg(Color.CYAN)
+                .a("Hottest expressions: ")
+                .reset());
+
+        app.writeSeperator();
+        writer.print(this.profiler.toTable(this.limit));
+        app.writeSeperator();
+
+        if (this.jsonPath != null) {
+            try {
+                Files.writeString(this.jsonPath, this.profiler.toJson());
+                writer.println(ansi().fg(Color.GREEN)
+                        .a("The profile was exported to " + this.jsonPath)
+                        .reset());
+            } catch (IOException e) {
+                app.writeException(e);
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -58,6 +58,9 @@ public class WriteResultLoggerPackage implements TerminalPackage<Void> {
         if (!res.success()) {
             message = message.fgRed()
                     .a("there was an error while writing this item");
+        } else if (res.unchanged()) {
+            message = message.fgBright(Color.BLACK)
+                    .a("the existing file was already up to date");
         } else {
             if (res.contentWritten()) {
                 if (res.overwritten()) message = message.fgYellow()
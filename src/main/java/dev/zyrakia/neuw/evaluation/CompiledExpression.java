@@ -0,0 +1,66 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.util.Set;
+
+/**
+ * Represents an expression that has been prepared for evaluation ahead of
+ * time, so that it can be evaluated repeatedly without being parsed again.
+ * <p>
+ * A compiled expression is not bound to the shell that compiled it, and can be
+ * evaluated with any shell.
+ */
+public interface CompiledExpression {
+
+	/**
+	 * Returns the text of the expression that was compiled.
+	 *
+	 * @return the expression text
+	 */
+	String expression();
+
+	/**
+	 * Returns the source that the expression was compiled from.
+	 *
+	 * @return the source of the expression
+	 */
+	String source();
+
+	/**
+	 * Evaluates this expression with the given shell.
+	 *
+	 * @param shell the shell to evaluate the expression with
+	 * @return the result of the expression
+	 */
+	Object evaluate(EvaluationShell shell);
+
+	/**
+	 * Returns whether this expression is resolved directly, without being
+	 * executed by an engine.
+	 *
+	 * @return true if the expression is resolved directly, false otherwise
+	 */
+	default boolean isDirect() { return false; }
+
+	/**
+	 * Returns the names of the variables this expression may read. The names
+	 * may include more than the variables that are actually read, but never
+	 * fewer.
+	 * <p>
+	 * By default the references are unknown.
+	 *
+	 * @return the referenced names, or {@code null} if they are unknown
+	 */
+	default Set<String> references() { return null; }
+
+	/**
+	 * Returns whether the result of this expression only depends on the
+	 * variables it reads, so that evaluating it again with the same variables
+	 * produces the same result.
+	 * <p>
+	 * By default expressions are assumed to be impure.
+	 *
+	 * @return true if the expression is pure, false otherwise
+	 */
+	default boolean isPure() { return false; }
+
+}
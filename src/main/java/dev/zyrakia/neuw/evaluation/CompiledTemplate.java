@@ -0,0 +1,523 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents content that has been scanned for expressions ahead of time. The
+ * content is split into literal and expression segments, and can be rendered
+ * any amount of times with different shells without being scanned again.
+ * <p>
+ * Instances are created by
+ * {@link ContentEvaluator#compile(CharSequence, String)} or
+ * {@link ContentEvaluator#compile(ByteBuffer, String)} and are immutable.
+ */
+public final class CompiledTemplate {
+
+	/**
+	 * The amount of characters copied at once when appending a literal that
+	 * is not a slice of a string, and the amount of bytes buffered before
+	 * they are written when rendering into a channel.
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * Represents a part of a compiled template.
+	 */
+	public sealed interface Segment
+			permits Literal, EncodedLiteral, Expression {}
+
+	/**
+	 * A segment of text that is rendered as is. The segment is a slice of the
+	 * content it was compiled from, so the text is not copied until it is
+	 * requested.
+	 *
+	 * @param content the content the segment was taken from
+	 * @param start the index of the first character of the segment
+	 * @param end the index after the last character of the segment
+	 */
+	public record Literal(CharSequence content, int start, int end)
+			implements Segment {
+
+		/**
+		 * Returns the text of this segment.
+		 *
+		 * @return the text
+		 */
+		public String text() {
+			return this.content.subSequence(this.start, this.end).toString();
+		}
+
+	}
+
+	/**
+	 * A segment of UTF-8 encoded text that is rendered as is. The segment is a
+	 * slice of the encoded content it was compiled from, so when rendered into
+	 * a channel, its bytes are written without ever being decoded.
+	 *
+	 * @param content the encoded content the segment was taken from
+	 * @param start the index of the first byte of the segment
+	 * @param end the index after the last byte of the segment
+	 */
+	public record EncodedLiteral(ByteBuffer content, int start, int end)
+			implements Segment {
+
+		/**
+		 * Returns the bytes of this segment, as a buffer sharing the content
+		 * it was taken from.
+		 *
+		 * @return the bytes
+		 */
+		public ByteBuffer bytes() {
+			return this.content.slice(this.start, this.end - this.start);
+		}
+
+		/**
+		 * Returns the decoded text of this segment.
+		 *
+		 * @return the text
+		 */
+		public String text() {
+			return StandardCharsets.UTF_8.decode(this.bytes()).toString();
+		}
+
+	}
+
+	/**
+	 * A segment that is replaced by the result of its expression when
+	 * rendered.
+	 *
+	 * @param expression the compiled expression of the segment
+	 */
+	public record Expression(CompiledExpression expression)
+			implements Segment {}
+
+	/**
+	 * The source that the template was compiled from.
+	 */
+	private final String source;
+
+	/**
+	 * The segments of the template, in order.
+	 */
+	private final List<Segment> segments;
+
+	/**
+	 * The expression that evaluates every expression of the template at once,
+	 * if the template was compiled as a whole.
+	 */
+	private final CompiledExpression whole;
+
+	/**
+	 * Creates a new compiled template with the given segments, that can also be
+	 * rendered at once with the given expression.
+	 *
+	 * @param source the source that the template was compiled from
+	 * @param segments the segments of the template, in order
+	 * @param whole the expression that evaluates every expression of the
+	 * template at once, or {@code null} if the expressions should be evaluated
+	 * one by one
+	 */
+	CompiledTemplate(String source, List<Segment> segments,
+			CompiledExpression whole) {
+		this.source = source;
+		this.segments = List.copyOf(segments);
+		this.whole = whole;
+	}
+
+	/**
+	 * Creates a new compiled template with the given segments.
+	 *
+	 * @param source the source that the template was compiled from
+	 * @param segments the segments of the template, in order
+	 */
+	CompiledTemplate(String source, List<Segment> segments) {
+		this(source, segments, null);
+	}
+
+	/**
+	 * Returns the source that this template was compiled from.
+	 *
+	 * @return the source
+	 */
+	public String source() { return this.source; }
+
+	/**
+	 * Returns the segments of this template, in order.
+	 *
+	 * @return the segments
+	 */
+	public List<Segment> segments() { return this.segments; }
+
+	/**
+	 * Returns the expression that evaluates every expression of this template
+	 * at once.
+	 *
+	 * @return the whole template expression, or {@code null} if the
+	 * expressions of this template are evaluated one by one
+	 * @see EvaluationShell#compileTemplate(CompiledTemplate)
+	 */
+	public CompiledExpression whole() { return this.whole; }
+
+	/**
+	 * Returns whether this template contains no expressions, meaning it will
+	 * always render to the same content.
+	 *
+	 * @return true if there are no expression segments, false otherwise
+	 */
+	public boolean isLiteral() {
+		for (Segment segment : this.segments) {
+			if (segment instanceof Expression) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the share of expression segments in this template that are
+	 * resolved directly, without being executed by an engine.
+	 *
+	 * @return the direct share between 0 and 1, or 0 if there are no
+	 * expressions
+	 * @see CompiledExpression#isDirect()
+	 */
+	public double directShare() {
+		int expressions = 0;
+		int direct = 0;
+
+		for (Segment segment : this.segments) {
+			if (segment instanceof Expression expression) {
+				expressions++;
+				if (expression.expression().isDirect()) direct++;
+			}
+		}
+
+		return expressions == 0 ? 0 : (double) direct / expressions;
+	}
+
+	/**
+	 * Returns the names of the variables that rendering this template may
+	 * read, combined from every expression.
+	 *
+	 * @return the referenced names, or {@code null} if the references of any
+	 * expression are unknown
+	 * @see CompiledExpression#references()
+	 */
+	public Set<String> references() {
+		if (this.whole != null) return this.whole.references();
+
+		Set<String> references = new HashSet<>();
+		for (Segment segment : this.segments) {
+			if (!(segment instanceof Expression expression)) continue;
+
+			Set<String> expressionReferences = expression.expression()
+					.references();
+			if (expressionReferences == null) return null;
+			references.addAll(expressionReferences);
+		}
+
+		return Collections.unmodifiableSet(references);
+	}
+
+	/**
+	 * Returns whether rendering this template again with the same variables
+	 * produces the same content, meaning every expression is pure.
+	 *
+	 * @return true if the template is pure, false otherwise
+	 * @see CompiledExpression#isPure()
+	 */
+	public boolean isPure() {
+		if (this.whole != null) return this.whole.isPure();
+
+		for (Segment segment : this.segments) {
+			if (segment instanceof Expression expression
+					&& !expression.expression().isPure())
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Renders this template with the given shell, replacing every expression
+	 * segment with the result of its expression.
+	 *
+	 * @param shell the shell used to evaluate the expressions
+	 * @return the rendered content
+	 */
+	public String render(EvaluationShell shell) {
+		if (this.segments.size() == 1
+				&& this.segments.get(0) instanceof Literal literal)
+			return literal.text();
+		if (this.segments.size() == 1
+				&& this.segments.get(0) instanceof EncodedLiteral literal)
+			return literal.text();
+
+		StringBuilder builder = new StringBuilder();
+		try {
+			this.render(builder, shell);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Renders this template with the given shell directly into the given
+	 * output. Literal segments are appended as slices of the compiled content,
+	 * and expression results are appended as soon as they are evaluated, so
+	 * the rendered content is never held in memory as a whole.
+	 * <p>
+	 * Templates that were compiled as a whole evaluate all of their
+	 * expressions before anything is appended, since they are evaluated at
+	 * once.
+	 * <p>
+	 * The shell is notified of the content around the evaluations, see
+	 * {@link EvaluationShell#beginContent(String)}.
+	 *
+	 * @param out the output to render into
+	 * @param shell the shell used to evaluate the expressions
+	 * @throws IOException if the output cannot be appended to
+	 */
+	public void render(Appendable out, EvaluationShell shell)
+			throws IOException {
+		shell.beginContent(this.source);
+		try {
+			this.renderSegments(out, shell);
+		} finally {
+			shell.endContent(this.source);
+		}
+	}
+
+	/**
+	 * Renders the segments of this template into the given output, with the
+	 * results of the whole template expression if there is one.
+	 *
+	 * @param out the output to render into
+	 * @param shell the shell used to evaluate the expressions
+	 * @throws IOException if the output cannot be appended to
+	 */
+	private void renderSegments(Appendable out, EvaluationShell shell)
+			throws IOException {
+		Object[] results = this.evaluateWhole(shell);
+		int next = 0;
+
+		for (Segment segment : this.segments) {
+			if (segment instanceof Literal literal) {
+				this.appendLiteral(out, literal);
+			} else if (segment instanceof EncodedLiteral literal) {
+				out.append(literal.text());
+			} else if (segment instanceof Expression expression) {
+				Object result = results != null ? results[next++]
+						: expression.expression().evaluate(shell);
+				if (result != null) out.append(result.toString());
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the whole template expression, if there is one.
+	 *
+	 * @param shell the shell used to evaluate the expression
+	 * @return the results of every expression segment in order, or
+	 * {@code null} if there is no whole template expression
+	 * @throws IllegalStateException if the expression does not evaluate to a
+	 * result for every expression segment
+	 */
+	private Object[] evaluateWhole(EvaluationShell shell)
+			throws IllegalStateException {
+		if (this.whole == null) return null;
+
+		int expressions = 0;
+		for (Segment segment : this.segments) {
+			if (segment instanceof Expression) expressions++;
+		}
+
+		if (!(this.whole.evaluate(shell) instanceof Object[] results)
+				|| results.length != expressions)
+			throw new IllegalStateException(
+					"The whole template expression did not evaluate to a "
+							+ "result for every expression.");
+
+		return results;
+	}
+
+	/**
+	 * Appends the given literal to the given output. Writers are given the
+	 * range of the underlying string directly, to avoid copying the slice.
+	 * Other content is given to writers in chunks, so that a large literal of
+	 * content that is not held in the heap is never copied as a whole.
+	 *
+	 * @param out the output to append to
+	 * @param literal the literal to append
+	 * @throws IOException if the output cannot be appended to
+	 */
+	private void appendLiteral(Appendable out, Literal literal)
+			throws IOException {
+		if (!(out instanceof Writer writer)) {
+			out.append(literal.content(), literal.start(), literal.end());
+			return;
+		}
+
+		if (literal.content() instanceof String content) {
+			writer.write(content, literal.start(), literal.end()
+					- literal.start());
+			return;
+		}
+
+		CharSequence content = literal.content();
+		char[] chunk = new char[Math.min(CHUNK_SIZE, literal.end()
+				- literal.start())];
+		for (int i = literal.start(); i < literal.end(); i += chunk.length) {
+			int length = Math.min(chunk.length, literal.end() - i);
+			for (int j = 0; j < length; j++) {
+				chunk[j] = content.charAt(i + j);
+			}
+
+			writer.write(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Renders this template with the given shell directly into the given
+	 * channel as UTF-8. Encoded literal segments are written as slices of the
+	 * compiled content without being decoded, and only the results of
+	 * expressions are encoded. Small writes are gathered in a buffer of
+	 * {@link #CHUNK_SIZE} bytes, while larger slices are written directly.
+	 * The channel is not closed.
+	 * <p>
+	 * The shell is notified of the content around the evaluations, see
+	 * {@link EvaluationShell#beginContent(String)}.
+	 *
+	 * @param channel the channel to render into
+	 * @param shell the shell used to evaluate the expressions
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public void render(WritableByteChannel channel, EvaluationShell shell)
+			throws IOException {
+		shell.beginContent(this.source);
+		try {
+			this.renderSegments(channel, shell);
+		} finally {
+			shell.endContent(this.source);
+		}
+	}
+
+	/**
+	 * Renders the segments of this template, or the whole template expression
+	 * if there is one, into the given channel.
+	 *
+	 * @param channel the channel to render into
+	 * @param shell the shell used to evaluate the expressions
+	 * @throws IOException if the channel cannot be written to
+	 */
+	private void renderSegments(WritableByteChannel channel,
+			EvaluationShell shell) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+		Object[] results = this.evaluateWhole(shell);
+		int next = 0;
+
+		for (Segment segment : this.segments) {
+			if (segment instanceof EncodedLiteral literal) {
+				CompiledTemplate.write(channel, buffer, literal.bytes());
+			} else if (segment instanceof Literal literal) {
+				CompiledTemplate.write(channel, buffer, literal);
+			} else if (segment instanceof Expression expression) {
+				Object result = results != null ? results[next++]
+						: expression.expression().evaluate(shell);
+				if (result != null) CompiledTemplate.write(channel, buffer,
+						CompiledTemplate.encode(result.toString()));
+			}
+		}
+
+		CompiledTemplate.flush(channel, buffer);
+	}
+
+	/**
+	 * Encodes the given text as UTF-8.
+	 *
+	 * @param text the text to encode
+	 * @return the encoded bytes
+	 */
+	private static ByteBuffer encode(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes the given bytes into the given channel, gathering them in the
+	 * given buffer if they fit.
+	 *
+	 * @param channel the channel to write to
+	 * @param buffer the buffer of pending bytes
+	 * @param bytes the bytes to write
+	 * @throws IOException if the channel cannot be written to
+	 */
+	private static void write(WritableByteChannel channel, ByteBuffer buffer,
+			ByteBuffer bytes) throws IOException {
+		if (bytes.remaining() > buffer.remaining())
+			CompiledTemplate.flush(channel, buffer);
+
+		if (bytes.remaining() <= buffer.remaining()) {
+			buffer.put(bytes);
+			return;
+		}
+
+		while (bytes.hasRemaining()) channel.write(bytes);
+	}
+
+	/**
+	 * Encodes the given literal as UTF-8 into the given buffer, writing the
+	 * buffer into the given channel whenever it fills up, so that a large
+	 * literal is never encoded as a whole. Malformed characters are replaced,
+	 * just like {@link StandardCharsets#UTF_8} would.
+	 *
+	 * @param channel the channel to write to
+	 * @param buffer the buffer of pending bytes
+	 * @param literal the literal to encode
+	 * @throws IOException if the channel cannot be written to
+	 */
+	private static void write(WritableByteChannel channel, ByteBuffer buffer,
+			Literal literal) throws IOException {
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.wrap(literal.content(), literal.start(),
+				literal.end());
+
+		while (encoder.encode(chars, buffer, true).isOverflow()) {
+			CompiledTemplate.flush(channel, buffer);
+		}
+
+		while (encoder.flush(buffer).isOverflow()) {
+			CompiledTemplate.flush(channel, buffer);
+		}
+	}
+
+	/**
+	 * Writes the pending bytes of the given buffer into the given channel, and
+	 * clears the buffer.
+	 *
+	 * @param channel the channel to write to
+	 * @param buffer the buffer of pending bytes
+	 * @throws IOException if the channel cannot be written to
+	 */
+	private static void flush(WritableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+}
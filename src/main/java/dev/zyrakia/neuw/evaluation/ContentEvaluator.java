@@ -1,6 +1,13 @@
 package dev.zyrakia.neuw.evaluation;
 
-import java.util.regex.Matcher;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -9,69 +16,361 @@ import java.util.regex.Pattern;
  * A search will be performed for any template expressions and each will be
  * evaluated if found. The result of the expression will then be used to replace
  * the text of the expression that was evaluated.
+ * <p>
+ * Content that is rendered more than once should be compiled with
+ * {@link #compile(CharSequence, String)}, so that the search is only performed
+ * once.
  */
 public class ContentEvaluator {
 
 	/**
-	 * Represents the pattern used to search for expressions.
+	 * Represents the scanner used to search for expressions.
 	 */
-	Pattern expressionPattern;
+	ExpressionScanner scanner;
 
 	/**
 	 * Represents the shell used to evaluate found expressions.
 	 */
 	EvaluationShell shell;
 
+	/**
+	 * Represents whether content should be compiled into a single expression
+	 * where the shell supports it.
+	 */
+	boolean wholeCompilation = false;
+
+	/**
+	 * Represents the profiler that evaluations of compiled expressions are
+	 * recorded with, if any.
+	 */
+	ExpressionProfiler profiler = null;
+
+	/**
+	 * Creates a new content evaluator that searches for expressions with the
+	 * given scanner.
+	 *
+	 * @param scanner the scanner used to search for expressions within content
+	 * @param shell the shell used to evaluate any found expressions
+	 */
+	public ContentEvaluator(ExpressionScanner scanner, EvaluationShell shell) {
+		this.scanner = scanner;
+		this.shell = shell;
+	}
+
 	/**
 	 * Creates a new content evaluator that searches for expressions with the
 	 * given pattern.
+	 * <p>
+	 * Fixed delimiters are located much faster by a
+	 * {@link DelimiterExpressionScanner}, so a pattern should only be used when
+	 * the expressions cannot be described by delimiters.
 	 *
 	 * @param expressionPattern the pattern used to search for expressions
 	 * within content
 	 * @param shell the shell used to evaluate any found expressions
 	 */
 	public ContentEvaluator(Pattern expressionPattern, EvaluationShell shell) {
-		this.expressionPattern = expressionPattern;
-		this.shell = shell;
+		this(new PatternExpressionScanner(expressionPattern), shell);
+	}
+
+	/**
+	 * Returns the scanner used to search for expressions.
+	 *
+	 * @return the expression scanner
+	 */
+	public ExpressionScanner getScanner() { return this.scanner; }
+
+	/**
+	 * Sets whether content should be compiled into a single expression that
+	 * renders the entire content at once, instead of one expression per
+	 * occurrence. This is only done if the shell supports it, and the content
+	 * will be compiled normally otherwise.
+	 * <p>
+	 * This is most beneficial for content with many small expressions, since
+	 * rendering it only requires a single evaluation.
+	 *
+	 * @param wholeCompilation whether to compile content as a whole
+	 * @see EvaluationShell#compileTemplate(CompiledTemplate)
+	 */
+	public void setWholeCompilation(boolean wholeCompilation) {
+		this.wholeCompilation = wholeCompilation;
+	}
+
+	/**
+	 * Returns whether content is compiled into a single expression where the
+	 * shell supports it.
+	 *
+	 * @return true if content is compiled as a whole, false otherwise
+	 */
+	public boolean isWholeCompilation() { return this.wholeCompilation; }
+
+	/**
+	 * Sets the profiler that evaluations of expressions are recorded with.
+	 * Only content compiled while the profiler is set is recorded, and content
+	 * compiled as a whole is recorded as a single
+	 * {@link ExpressionProfiler#WHOLE_TEMPLATE} expression.
+	 *
+	 * @param profiler the profiler to record with, or {@code null} to stop
+	 * profiling
+	 */
+	public void setProfiler(ExpressionProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Returns the profiler that evaluations of expressions are recorded with.
+	 *
+	 * @return the profiler, or {@code null} if expressions are not profiled
+	 */
+	public ExpressionProfiler getProfiler() { return this.profiler; }
+
+	/**
+	 * Scans the given content for expressions, and compiles it into a template
+	 * that can be rendered repeatedly without scanning the content again.
+	 *
+	 * @param content the content to compile
+	 * @param source the source of the content
+	 * @return the compiled template
+	 */
+	public CompiledTemplate compile(CharSequence content, String source) {
+		return this.compileScanned(this.scan(content, source), source);
+	}
+
+	/**
+	 * Scans the given UTF-8 encoded content for expressions without decoding
+	 * it, and compiles it into a template that can be rendered repeatedly
+	 * without scanning the content again.
+	 * <p>
+	 * The literal segments of the template are slices of the given content,
+	 * so that rendering the template into a channel writes them without ever
+	 * decoding them, and only the expressions are decoded. If the scanner can
+	 * only scan decoded content, the content is decoded and compiled as usual.
+	 *
+	 * @param content the UTF-8 encoded content to compile, between its
+	 * position and limit, which must not be modified afterwards
+	 * @param source the source of the content
+	 * @return the compiled template
+	 * @see CompiledTemplate#render(WritableByteChannel, EvaluationShell)
+	 */
+	public CompiledTemplate compile(ByteBuffer content, String source) {
+		CompiledTemplate scanned = this.scan(content, source);
+		if (scanned == null) return this.compile(StandardCharsets.UTF_8
+				.decode(content.duplicate()), source);
+
+		return this.compileScanned(scanned, source);
+	}
+
+	/**
+	 * Compiles the expressions of the given scanned template.
+	 *
+	 * @param scanned the scanned template, with deferred expression segments
+	 * @param source the source of the content
+	 * @return the compiled template
+	 */
+	private CompiledTemplate compileScanned(CompiledTemplate scanned,
+			String source) {
+		if (scanned.isLiteral()) return scanned;
+
+		if (this.wholeCompilation) {
+			CompiledExpression whole = this.shell.compileTemplate(scanned);
+			if (whole != null) return new CompiledTemplate(source, scanned
+					.segments(), this.profile(whole, source,
+							ExpressionProfiler.WHOLE_TEMPLATE));
+		}
+
+		List<CompiledTemplate.Segment> segments = new ArrayList<>();
+		for (CompiledTemplate.Segment segment : scanned.segments()) {
+			if (segment instanceof CompiledTemplate.Expression expression) {
+				String text = expression.expression().expression();
+				segments.add(new CompiledTemplate.Expression(this.profile(
+						this.shell.compile(text, source), source, text)));
+			} else segments.add(segment);
+		}
+
+		return new CompiledTemplate(source, segments);
+	}
+
+	/**
+	 * Wraps the given expression so that its evaluations are recorded by the
+	 * profiler, if there is one.
+	 *
+	 * @param expression the expression to wrap
+	 * @param source the source that evaluations are attributed to
+	 * @param name the expression that evaluations are attributed to
+	 * @return the wrapped expression, or the given expression if there is no
+	 * profiler
+	 */
+	private CompiledExpression profile(CompiledExpression expression,
+			String source, String name) {
+		ExpressionProfiler profiler = this.profiler;
+		if (profiler == null) return expression;
+
+		return new ProfiledExpression(expression, source, name, profiler);
+	}
+
+	/**
+	 * Scans the given content for expressions, without compiling any of the
+	 * expressions that are found.
+	 *
+	 * @param content the content to scan
+	 * @param source the source of the content
+	 * @return the template, with deferred expression segments
+	 */
+	private CompiledTemplate scan(CharSequence content, String source) {
+		List<CompiledTemplate.Segment> segments = new ArrayList<>();
+
+		this.scanner.scan(content, new ExpressionScanner.Visitor() {
+			@Override
+			public void literal(int start, int end) {
+				segments.add(new CompiledTemplate.Literal(content, start, end));
+			}
+
+			@Override
+			public void expression(int start, int end) {
+				DeferredExpression expression = new DeferredExpression(content
+						.subSequence(start, end).toString(), source);
+				segments.add(new CompiledTemplate.Expression(expression));
+			}
+		});
+
+		return new CompiledTemplate(source, segments);
 	}
 
 	/**
-	 * Evaluates the given string, executing and replacing any found
+	 * Scans the given encoded content for expressions, without decoding the
+	 * literals or compiling any of the expressions that are found.
+	 *
+	 * @param content the UTF-8 encoded content to scan
+	 * @param source the source of the content
+	 * @return the template, with deferred expression segments, or
+	 * {@code null} if the scanner cannot scan encoded content
+	 */
+	private CompiledTemplate scan(ByteBuffer content, String source) {
+		List<CompiledTemplate.Segment> segments = new ArrayList<>();
+
+		boolean scanned = this.scanner.scan(content,
+				new ExpressionScanner.Visitor() {
+					@Override
+					public void literal(int start, int end) {
+						segments.add(new CompiledTemplate.EncodedLiteral(
+								content, start, end));
+					}
+
+					@Override
+					public void expression(int start, int end) {
+						String text = StandardCharsets.UTF_8.decode(content
+								.slice(start, end - start)).toString();
+						segments.add(new CompiledTemplate.Expression(
+								new DeferredExpression(text, source)));
+					}
+				});
+
+		return scanned ? new CompiledTemplate(source, segments) : null;
+	}
+
+	/**
+	 * Renders the given compiled template with the shell of this evaluator.
+	 *
+	 * @param template the template to render
+	 * @return the resulting content, with all expressions evaluated
+	 */
+	public String render(CompiledTemplate template) {
+		return template.render(this.shell);
+	}
+
+	/**
+	 * Renders the given compiled template with the shell of this evaluator,
+	 * writing the resulting content into the given output as it is produced.
+	 *
+	 * @param template the template to render
+	 * @param out the output to write the resulting content to
+	 * @throws IOException if the output cannot be appended to
+	 */
+	public void render(CompiledTemplate template, Appendable out)
+			throws IOException {
+		template.render(out, this.shell);
+	}
+
+	/**
+	 * Renders the given compiled template with the shell of this evaluator,
+	 * writing the resulting content into the given channel as UTF-8 as it is
+	 * produced. The channel is not closed.
+	 *
+	 * @param template the template to render
+	 * @param channel the channel to write the resulting content to
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public void render(CompiledTemplate template, WritableByteChannel channel)
+			throws IOException {
+		template.render(channel, this.shell);
+	}
+
+	/**
+	 * Evaluates the given content, executing and replacing any found
 	 * expressions.
 	 *
 	 * @param content the content to evaluate
 	 * @param source the source of the content
 	 * @return the resulting content, with all expressions evaluated
 	 */
-	public String evaluate(String content, String source) {
-		Matcher expressionMatcher = this.expressionPattern.matcher(content);
+	public String evaluate(CharSequence content, String source) {
+		return this.compile(content, source).render(this.shell);
+	}
 
-		if (expressionMatcher.find()) {
-			return expressionMatcher.replaceAll((match) -> {
-				String expression = match.groupCount() > 0
-						? match.group(1)
-						: match.group();
-				Object expressionResult = this
-						.evaluateExpression(expression, source);
-				if (expressionResult == null) return "";
+	/**
+	 * Evaluates the given content, writing the resulting content into the given
+	 * output as it is produced.
+	 *
+	 * @param content the content to evaluate
+	 * @param source the source of the content
+	 * @param out the output to write the resulting content to
+	 * @throws IOException if the output cannot be appended to
+	 */
+	public void evaluate(CharSequence content, String source, Appendable out)
+			throws IOException {
+		this.compile(content, source).render(out, this.shell);
+	}
+
+	/**
+	 * Evaluates the given content, writing the resulting content into the given
+	 * channel as UTF-8 as it is produced. The channel is not closed.
+	 *
+	 * @param content the content to evaluate
+	 * @param source the source of the content
+	 * @param channel the channel to write the resulting content to
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public void evaluate(CharSequence content, String source,
+			WritableByteChannel channel) throws IOException {
+		Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+		this.evaluate(content, source, writer);
+		writer.flush();
+	}
 
-				return expressionResult.toString();
-			});
-		} else return content;
+	/**
+	 * Evaluates the given UTF-8 encoded content, writing the resulting content
+	 * into the given channel as it is produced. Literal parts of the content
+	 * are written as is, without being decoded. The channel is not closed.
+	 *
+	 * @param content the UTF-8 encoded content to evaluate
+	 * @param source the source of the content
+	 * @param channel the channel to write the resulting content to
+	 * @throws IOException if the channel cannot be written to
+	 * @see #compile(ByteBuffer, String)
+	 */
+	public void evaluate(ByteBuffer content, String source,
+			WritableByteChannel channel) throws IOException {
+		this.compile(content, source).render(channel, this.shell);
 	}
 
 	/**
-	 * Evaluates the given expression.
+	 * Lets the shell of this evaluator release anything it keeps for the
+	 * current thread, once the thread has finished a unit of work.
 	 *
-	 * @param expression the expression to evaluate
-	 * @param source the source of the expression
-	 * @return the result of the expression
+	 * @see EvaluationShell#releaseThread()
 	 */
-	private Object evaluateExpression(String expression, String source) {
-		if (this.shell instanceof SourcedEvaluationShell) {
-			SourcedEvaluationShell shell = (SourcedEvaluationShell) this.shell;
-			return shell.evaluate(expression, source);
-		} else return this.shell.evaluate(expression);
+	public void releaseThread() {
+		this.shell.releaseThread();
 	}
 
 }
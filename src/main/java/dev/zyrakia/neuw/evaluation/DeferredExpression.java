@@ -0,0 +1,24 @@
+package dev.zyrakia.neuw.evaluation;
+
+/**
+ * A {@link CompiledExpression} that does no preparation of its own, and instead
+ * passes the expression text to the shell every time it is evaluated.
+ * <p>
+ * This is used by shells that have no way of compiling expressions ahead of
+ * time.
+ *
+ * @param expression the text of the expression
+ * @param source the source of the expression
+ */
+public record DeferredExpression(String expression, String source)
+		implements CompiledExpression {
+
+	@Override
+	public Object evaluate(EvaluationShell shell) {
+		if (shell instanceof SourcedEvaluationShell) {
+			SourcedEvaluationShell sourced = (SourcedEvaluationShell) shell;
+			return sourced.evaluate(this.expression, this.source);
+		} else return shell.evaluate(this.expression);
+	}
+
+}
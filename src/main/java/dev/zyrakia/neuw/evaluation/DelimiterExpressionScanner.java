@@ -0,0 +1,341 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An {@link ExpressionScanner} that locates expressions between a fixed open
+ * and close delimiter, such as {@code {{} and {@code }}}.
+ * <p>
+ * Unlike a {@link PatternExpressionScanner}, this scanner only searches for the
+ * delimiters with {@link String#indexOf(String, int)}, so content without any
+ * expressions is passed over in a single search. Expressions may span multiple
+ * lines, and an open delimiter without a matching close delimiter is kept as
+ * literal content.
+ * <p>
+ * An open delimiter that is directly preceded by the escape character is not
+ * treated as an expression. The escape character is removed, and the delimiter
+ * is kept as literal content. The escape character can itself be escaped when
+ * it directly precedes an open delimiter, so every pair of escape characters
+ * before an open delimiter is kept as a single escape character, and the
+ * delimiter is only escaped if one is left over. For example {@code \\{{a}}}
+ * renders as a backslash followed by the result of {@code a}. Escape
+ * characters anywhere else are kept as is.
+ */
+public class DelimiterExpressionScanner implements ExpressionScanner {
+
+	/**
+	 * The escape character used when none is specified.
+	 */
+	public static final char DEFAULT_ESCAPE = '\\';
+
+	/**
+	 * Represents the delimiter that opens an expression.
+	 */
+	private final String open;
+
+	/**
+	 * Represents the delimiter that closes an expression.
+	 */
+	private final String close;
+
+	/**
+	 * Represents the character that escapes an open delimiter.
+	 */
+	private final char escape;
+
+	/**
+	 * Represents the UTF-8 encoding of the open delimiter.
+	 */
+	private final byte[] openBytes;
+
+	/**
+	 * Represents the UTF-8 encoding of the close delimiter.
+	 */
+	private final byte[] closeBytes;
+
+	/**
+	 * Represents the UTF-8 encoding of the escape character.
+	 */
+	private final byte[] escapeBytes;
+
+	/**
+	 * Creates a new scanner that searches for expressions between the given
+	 * delimiters, which can be escaped with the given character.
+	 *
+	 * @param open the delimiter that opens an expression
+	 * @param close the delimiter that closes an expression
+	 * @param escape the character that escapes an open delimiter
+	 * @throws IllegalArgumentException if either delimiter is empty
+	 */
+	public DelimiterExpressionScanner(String open, String close, char escape)
+			throws IllegalArgumentException {
+		if (open.isEmpty() || close.isEmpty())
+			throw new IllegalArgumentException(
+					"Expression delimiters cannot be empty.");
+
+		this.open = open;
+		this.close = close;
+		this.escape = escape;
+		this.openBytes = open.getBytes(StandardCharsets.UTF_8);
+		this.closeBytes = close.getBytes(StandardCharsets.UTF_8);
+		this.escapeBytes = String.valueOf(escape)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates a new scanner that searches for expressions between the given
+	 * delimiters, which can be escaped with the {@link #DEFAULT_ESCAPE}.
+	 *
+	 * @param open the delimiter that opens an expression
+	 * @param close the delimiter that closes an expression
+	 * @throws IllegalArgumentException if either delimiter is empty
+	 */
+	public DelimiterExpressionScanner(String open, String close)
+			throws IllegalArgumentException {
+		this(open, close, DEFAULT_ESCAPE);
+	}
+
+	/**
+	 * Returns the delimiter that opens an expression.
+	 *
+	 * @return the open delimiter
+	 */
+	public String getOpen() { return this.open; }
+
+	/**
+	 * Returns the delimiter that closes an expression.
+	 *
+	 * @return the close delimiter
+	 */
+	public String getClose() { return this.close; }
+
+	/**
+	 * Returns the character that escapes an open delimiter.
+	 *
+	 * @return the escape character
+	 */
+	public char getEscape() { return this.escape; }
+
+	@Override
+	public void scan(CharSequence content, Visitor visitor) {
+		this.scan(new Source() {
+			@Override
+			public int indexOf(boolean open, int from) {
+				return DelimiterExpressionScanner.indexOf(content, open
+						? DelimiterExpressionScanner.this.open
+						: DelimiterExpressionScanner.this.close, from);
+			}
+
+			@Override
+			public boolean isEscape(int index) {
+				return content.charAt(index) == DelimiterExpressionScanner.this
+						.escape;
+			}
+		}, 0, content.length(), this.open.length(), this.close.length(), 1,
+				visitor);
+	}
+
+	/**
+	 * Scans the given content the same way as
+	 * {@link #scan(CharSequence, Visitor)}, but searches for the encoded
+	 * delimiters. Since no UTF-8 sequence occurs within another, a delimiter
+	 * can only match at a character boundary.
+	 *
+	 * @param content the UTF-8 encoded content to scan, between its position
+	 * and limit
+	 * @param visitor the visitor to receive the found byte ranges
+	 * @return always true
+	 */
+	@Override
+	public boolean scan(ByteBuffer content, Visitor visitor) {
+		this.scan(new Source() {
+			@Override
+			public int indexOf(boolean open, int from) {
+				return DelimiterExpressionScanner.indexOf(content, open
+						? DelimiterExpressionScanner.this.openBytes
+						: DelimiterExpressionScanner.this.closeBytes, from);
+			}
+
+			@Override
+			public boolean isEscape(int index) {
+				return DelimiterExpressionScanner.startsWith(content,
+						DelimiterExpressionScanner.this.escapeBytes, index);
+			}
+		}, content.position(), content.limit(), this.openBytes.length,
+				this.closeBytes.length, this.escapeBytes.length, visitor);
+		return true;
+	}
+
+	/**
+	 * Represents content that is scanned for delimiters, either as characters
+	 * or as encoded bytes, so that both are scanned by the same logic.
+	 */
+	private interface Source {
+
+		/**
+		 * Returns the index of the first occurrence of a delimiter, starting
+		 * at the given index.
+		 *
+		 * @param open whether to search for the open delimiter, rather than
+		 * the close delimiter
+		 * @param from the index to start searching from
+		 * @return the index of the occurrence, or -1 if there is none
+		 */
+		int indexOf(boolean open, int from);
+
+		/**
+		 * Returns whether the escape character occurs at the given index.
+		 *
+		 * @param index the index to check
+		 * @return true if the escape character occurs at the index, false
+		 * otherwise
+		 */
+		boolean isEscape(int index);
+
+	}
+
+	/**
+	 * Scans the given source between the given indices, reporting the literal
+	 * and expression ranges to the given visitor. Every length is measured in
+	 * the units of the source.
+	 *
+	 * @param source the source to scan
+	 * @param start the index to start scanning at
+	 * @param end the index to stop scanning at
+	 * @param openLength the length of the open delimiter
+	 * @param closeLength the length of the close delimiter
+	 * @param escapeLength the length of the escape character
+	 * @param visitor the visitor to receive the found ranges
+	 */
+	private void scan(Source source, int start, int end, int openLength,
+			int closeLength, int escapeLength, Visitor visitor) {
+		int literalStart = start;
+		int searchFrom = start;
+
+		while (searchFrom < end) {
+			int openIndex = source.indexOf(true, searchFrom);
+			if (openIndex == -1) break;
+
+			int escapes = 0;
+			while (openIndex - (escapes + 1) * escapeLength >= literalStart
+					&& source.isEscape(openIndex - (escapes + 1)
+							* escapeLength))
+				escapes++;
+
+			if (escapes % 2 == 1) {
+				int literalEnd = openIndex - (escapes + 1) / 2 * escapeLength;
+				if (literalEnd > literalStart)
+					visitor.literal(literalStart, literalEnd);
+
+				literalStart = openIndex;
+				searchFrom = openIndex + openLength;
+				continue;
+			}
+
+			int expressionStart = openIndex + openLength;
+			int closeIndex = source.indexOf(false, expressionStart);
+			if (closeIndex == -1) break;
+
+			int literalEnd = openIndex - escapes / 2 * escapeLength;
+			if (literalEnd > literalStart)
+				visitor.literal(literalStart, literalEnd);
+			visitor.expression(expressionStart, closeIndex);
+
+			literalStart = closeIndex + closeLength;
+			searchFrom = literalStart;
+		}
+
+		if (literalStart < end) visitor.literal(literalStart, end);
+	}
+
+	/**
+	 * Returns whether the given content contains the open delimiter. Any
+	 * occurrence counts, even an escaped or unclosed one, since removing the
+	 * escape character changes the content.
+	 *
+	 * @param content the UTF-8 encoded content, between its position and limit
+	 * @return true if the content contains the open delimiter, false otherwise
+	 */
+	@Override
+	public boolean containsExpression(ByteBuffer content) {
+		return DelimiterExpressionScanner.indexOf(content, this.openBytes,
+				content.position()) != -1;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the given target within the
+	 * given content, starting at the given index.
+	 *
+	 * @param content the content to search
+	 * @param target the text to search for
+	 * @param from the index to start searching from
+	 * @return the index of the occurrence, or -1 if there is none
+	 */
+	private static int indexOf(CharSequence content, String target,
+			int from) {
+		if (content instanceof String) {
+			return ((String) content).indexOf(target, from);
+		}
+
+		char first = target.charAt(0);
+		int last = content.length() - target.length();
+
+		for (int i = from; i <= last; i++) {
+			if (content.charAt(i) != first) continue;
+
+			int matched = 1;
+			while (matched < target.length()
+					&& content.charAt(i + matched) == target.charAt(matched))
+				matched++;
+
+			if (matched == target.length()) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the given target within the
+	 * given content, starting at the given index and ending at the limit of
+	 * the content.
+	 *
+	 * @param content the content to search
+	 * @param target the bytes to search for
+	 * @param from the index to start searching from
+	 * @return the index of the occurrence, or -1 if there is none
+	 */
+	private static int indexOf(ByteBuffer content, byte[] target, int from) {
+		byte first = target[0];
+		int last = content.limit() - target.length;
+
+		for (int i = from; i <= last; i++) {
+			if (content.get(i) != first) continue;
+			if (DelimiterExpressionScanner.startsWith(content, target, i))
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns whether the given target occurs within the given content at the
+	 * given index.
+	 *
+	 * @param content the content to check
+	 * @param target the bytes to check for
+	 * @param index the index the target should occur at
+	 * @return true if the target occurs at the index, false otherwise
+	 */
+	private static boolean startsWith(ByteBuffer content, byte[] target,
+			int index) {
+		if (index + target.length > content.limit()) return false;
+
+		for (int i = 0; i < target.length; i++) {
+			if (content.get(index + i) != target[i]) return false;
+		}
+
+		return true;
+	}
+
+}
@@ -14,4 +14,68 @@ public interface EvaluationShell {
 	 */
 	Object evaluate(String expression);
 
+	/**
+	 * Compiles the given expression so that it can be evaluated repeatedly.
+	 * <p>
+	 * By default the expression is not prepared at all, and will be passed to
+	 * the evaluating shell as text.
+	 *
+	 * @param expression the expression to compile
+	 * @param source the source of the expression
+	 * @return the compiled expression
+	 */
+	default CompiledExpression compile(String expression, String source) {
+		return new DeferredExpression(expression, source);
+	}
+
+	/**
+	 * Compiles the given template into a single expression that evaluates
+	 * every expression of the template at once, so that rendering it only
+	 * requires a single evaluation. The compiled expression must evaluate to
+	 * an {@code Object[]} holding the result of every expression segment in
+	 * order, which are rendered the same way as results of single
+	 * expressions.
+	 * <p>
+	 * By default this is not supported, and {@code null} is returned.
+	 *
+	 * @param template the template to compile, its expression segments do not
+	 * need to be compiled
+	 * @return the compiled expression, or {@code null} if the template cannot
+	 * be compiled into a single expression
+	 */
+	default CompiledExpression compileTemplate(CompiledTemplate template) {
+		return null;
+	}
+
+	/**
+	 * Called before the expressions of a single content are evaluated, so
+	 * that the shell can account for them together.
+	 * <p>
+	 * By default this does nothing.
+	 *
+	 * @param source the source of the content
+	 * @see #endContent(String)
+	 */
+	default void beginContent(String source) {}
+
+	/**
+	 * Called after the expressions of a content have been evaluated, even if
+	 * the evaluation failed.
+	 * <p>
+	 * By default this does nothing.
+	 *
+	 * @param source the source of the content
+	 * @see #beginContent(String)
+	 */
+	default void endContent(String source) {}
+
+	/**
+	 * Called when the current thread has finished evaluating a unit of work,
+	 * so that the shell can release anything it keeps for the thread. The
+	 * shell must still be usable from the thread afterwards.
+	 * <p>
+	 * By default this does nothing.
+	 */
+	default void releaseThread() {}
+
 }
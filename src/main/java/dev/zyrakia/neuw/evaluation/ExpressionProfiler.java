@@ -0,0 +1,232 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how often each expression is evaluated, how long its evaluations
+ * take and how large its results are, so that the expressions that dominate
+ * rendering can be found.
+ * <p>
+ * Evaluations are attributed to the pair of their source and expression, and
+ * may be recorded from any amount of threads at once.
+ *
+ * @see ContentEvaluator#setProfiler(ExpressionProfiler)
+ */
+public class ExpressionProfiler {
+
+	/**
+	 * The expression that evaluations of templates compiled as a whole are
+	 * attributed to, since they do not evaluate expressions one by one.
+	 */
+	public static final String WHOLE_TEMPLATE = "<template>";
+
+	/**
+	 * Represents the statistics of a single expression at the time they were
+	 * requested.
+	 *
+	 * @param source the source of the expression
+	 * @param expression the expression
+	 * @param calls the amount of evaluations
+	 * @param totalNanos the time spent in all evaluations, in nanoseconds
+	 * @param maxNanos the time spent in the slowest evaluation, in nanoseconds
+	 * @param resultLength the total length of all results, in characters
+	 */
+	public record Entry(String source, String expression, long calls,
+			long totalNanos, long maxNanos, long resultLength) {
+
+		/**
+		 * Returns the average time spent in an evaluation.
+		 *
+		 * @return the average time in nanoseconds, or 0 if there were no
+		 * evaluations
+		 */
+		public long averageNanos() {
+			return this.calls == 0 ? 0 : this.totalNanos / this.calls;
+		}
+
+	}
+
+	/**
+	 * Represents the pair that evaluations are attributed to.
+	 *
+	 * @param source the source of the expression
+	 * @param expression the expression
+	 */
+	private record Key(String source, String expression) {}
+
+	/**
+	 * Represents the statistics of a single expression as they are recorded.
+	 */
+	private static final class Stats {
+
+		/**
+		 * Represents the amount of evaluations.
+		 */
+		private final LongAdder calls = new LongAdder();
+
+		/**
+		 * Represents the time spent in all evaluations.
+		 */
+		private final LongAdder totalNanos = new LongAdder();
+
+		/**
+		 * Represents the time spent in the slowest evaluation.
+		 */
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max,
+				0);
+
+		/**
+		 * Represents the total length of all results.
+		 */
+		private final LongAdder resultLength = new LongAdder();
+
+	}
+
+	/**
+	 * Represents the recorded statistics by the pair they are attributed to.
+	 */
+	private final Map<Key, Stats> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * Records a single evaluation of the given expression.
+	 *
+	 * @param source the source of the expression
+	 * @param expression the expression that was evaluated
+	 * @param nanos the time the evaluation took, in nanoseconds
+	 * @param resultLength the length of the result, in characters
+	 */
+	public void record(String source, String expression, long nanos,
+			long resultLength) {
+		Stats stats = this.stats.computeIfAbsent(new Key(source, expression),
+				(key) -> new Stats());
+
+		stats.calls.increment();
+		stats.totalNanos.add(nanos);
+		stats.maxNanos.accumulate(nanos);
+		stats.resultLength.add(resultLength);
+	}
+
+	/**
+	 * Returns the statistics of every recorded expression, hottest first,
+	 * meaning by descending total time.
+	 *
+	 * @return the recorded entries
+	 */
+	public List<Entry> entries() {
+		List<Entry> entries = new ArrayList<>(this.stats.size());
+		this.stats.forEach((key, stats) -> entries.add(new Entry(key.source(),
+				key.expression(), stats.calls.sum(), stats.totalNanos.sum(),
+				stats.maxNanos.get(), stats.resultLength.sum())));
+
+		entries.sort(Comparator.comparingLong(Entry::totalNanos).reversed());
+		return entries;
+	}
+
+	/**
+	 * Discards all recorded statistics.
+	 */
+	public void reset() {
+		this.stats.clear();
+	}
+
+	/**
+	 * Generates a table of the hottest expressions, with one row per
+	 * expression.
+	 *
+	 * @param limit the maximum amount of rows
+	 * @return the generated table
+	 */
+	public String toTable(int limit) {
+		String format = "%8s  %10s  %10s  %10s  %10s  %s%n";
+		StringBuilder table = new StringBuilder(String.format(format, "calls",
+				"total ms", "avg us", "max us", "chars", "source: expression"));
+
+		for (Entry entry : this.entries().stream().limit(limit).toList()) {
+			String total = String.format("%.3f", entry.totalNanos() / 1e6);
+			String average = String.format("%.1f", entry.averageNanos() / 1e3);
+			String max = String.format("%.1f", entry.maxNanos() / 1e3);
+			String name = entry.source() + ": "
+					+ ExpressionProfiler.singleLine(entry.expression());
+
+			table.append(String.format(format, entry.calls(), total, average,
+					max, entry.resultLength(), name));
+		}
+
+		return table.toString();
+	}
+
+	/**
+	 * Generates a JSON array of every recorded expression, hottest first.
+	 *
+	 * @return the generated JSON
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder("[");
+
+		List<Entry> entries = this.entries();
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			if (i > 0) json.append(',');
+
+			json.append("\n  {\"source\": ");
+			ExpressionProfiler.appendJsonString(json, entry.source());
+			json.append(", \"expression\": ");
+			ExpressionProfiler.appendJsonString(json, entry.expression());
+			json.append(", \"calls\": ").append(entry.calls());
+			json.append(", \"totalNanos\": ").append(entry.totalNanos());
+			json.append(", \"maxNanos\": ").append(entry.maxNanos());
+			json.append(", \"resultLength\": ").append(entry.resultLength());
+			json.append('}');
+		}
+
+		return json.append(entries.isEmpty() ? "]" : "\n]").toString();
+	}
+
+	/**
+	 * Collapses the given expression onto a single line, so that it fits
+	 * within a table row.
+	 *
+	 * @param expression the expression to collapse
+	 * @return the collapsed expression
+	 */
+	private static String singleLine(String expression) {
+		return expression.strip().replaceAll("\\s*\\R\\s*", " ");
+	}
+
+	/**
+	 * Appends the given string as a quoted and escaped JSON string.
+	 *
+	 * @param json the JSON to append to
+	 * @param value the string to append, or {@code null}
+	 */
+	private static void appendJsonString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"' -> json.append("\\\"");
+				case '\\' -> json.append("\\\\");
+				case '\n' -> json.append("\\n");
+				case '\r' -> json.append("\\r");
+				case '\t' -> json.append("\\t");
+				default -> {
+					if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+					else json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+}
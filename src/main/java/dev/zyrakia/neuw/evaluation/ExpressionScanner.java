@@ -0,0 +1,77 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a strategy to locate expressions within content.
+ */
+public interface ExpressionScanner {
+
+	/**
+	 * Receives the parts of content found by an {@link ExpressionScanner}, in
+	 * the order they appear in the content.
+	 */
+	interface Visitor {
+
+		/**
+		 * Receives a range of the content that should be kept as is.
+		 *
+		 * @param start the index of the first character of the range
+		 * @param end the index after the last character of the range
+		 */
+		void literal(int start, int end);
+
+		/**
+		 * Receives a range of the content that is an expression, without its
+		 * delimiters.
+		 *
+		 * @param start the index of the first character of the expression
+		 * @param end the index after the last character of the expression
+		 */
+		void expression(int start, int end);
+
+	}
+
+	/**
+	 * Scans the given content, passing every literal and expression range to
+	 * the given visitor in order.
+	 *
+	 * @param content the content to scan
+	 * @param visitor the visitor to receive the found ranges
+	 */
+	void scan(CharSequence content, Visitor visitor);
+
+	/**
+	 * Scans the given UTF-8 encoded content without decoding it, passing every
+	 * literal and expression range to the given visitor in order. The ranges
+	 * are byte offsets into the content rather than character indices.
+	 * <p>
+	 * By default encoded content cannot be scanned, and nothing is passed to
+	 * the visitor.
+	 *
+	 * @param content the UTF-8 encoded content to scan, between its position
+	 * and limit
+	 * @param visitor the visitor to receive the found ranges
+	 * @return true if the content was scanned, false if this scanner can only
+	 * scan decoded content
+	 */
+	default boolean scan(ByteBuffer content, Visitor visitor) {
+		return false;
+	}
+
+	/**
+	 * Returns whether the given UTF-8 encoded content may contain an
+	 * expression, without decoding it. Content for which this returns false
+	 * renders to exactly the same bytes, so it can be copied as is.
+	 * <p>
+	 * By default every content may contain an expression.
+	 *
+	 * @param content the UTF-8 encoded content, between its position and limit
+	 * @return false if the content certainly contains no expressions, true
+	 * otherwise
+	 */
+	default boolean containsExpression(ByteBuffer content) {
+		return true;
+	}
+
+}
@@ -0,0 +1,53 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link ExpressionScanner} that locates expressions with a regular
+ * expression.
+ * <p>
+ * If the pattern has a capturing group, the first group is used as the
+ * expression, otherwise the entire match is used.
+ */
+public class PatternExpressionScanner implements ExpressionScanner {
+
+	/**
+	 * Represents the pattern used to search for expressions.
+	 */
+	private final Pattern expressionPattern;
+
+	/**
+	 * Creates a new scanner that searches for expressions with the given
+	 * pattern.
+	 *
+	 * @param expressionPattern the pattern used to search for expressions
+	 */
+	public PatternExpressionScanner(Pattern expressionPattern) {
+		this.expressionPattern = expressionPattern;
+	}
+
+	@Override
+	public void scan(CharSequence content, Visitor visitor) {
+		Matcher expressionMatcher = this.expressionPattern.matcher(content);
+
+		int literalStart = 0;
+		while (expressionMatcher.find()) {
+			if (expressionMatcher.start() > literalStart)
+				visitor.literal(literalStart, expressionMatcher.start());
+
+			int group = expressionMatcher.groupCount() > 0 ? 1 : 0;
+			if (expressionMatcher.start(group) == -1) {
+				visitor.expression(expressionMatcher.end(), expressionMatcher
+						.end());
+			} else visitor.expression(expressionMatcher
+					.start(group), expressionMatcher.end(group));
+
+			literalStart = expressionMatcher.end();
+		}
+
+		if (literalStart < content.length())
+			visitor.literal(literalStart, content.length());
+	}
+
+}
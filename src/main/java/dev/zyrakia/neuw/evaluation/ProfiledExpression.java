@@ -0,0 +1,67 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.util.Set;
+
+/**
+ * A compiled expression that records each of its evaluations with a profiler.
+ *
+ * @param delegate the expression that is evaluated
+ * @param source the source that evaluations are attributed to, which may
+ * differ from the source of a delegate that is shared between sources
+ * @param name the expression that evaluations are attributed to
+ * @param profiler the profiler to record evaluations with
+ */
+record ProfiledExpression(CompiledExpression delegate, String source,
+		String name, ExpressionProfiler profiler) implements CompiledExpression {
+
+	@Override
+	public String expression() {
+		return this.delegate.expression();
+	}
+
+	@Override
+	public boolean isDirect() { return this.delegate.isDirect(); }
+
+	@Override
+	public Set<String> references() { return this.delegate.references(); }
+
+	@Override
+	public boolean isPure() { return this.delegate.isPure(); }
+
+	/**
+	 * Evaluates the delegate expression, recording how long the evaluation
+	 * took and how long its result is. Failed evaluations are not recorded.
+	 *
+	 * @param shell the shell to evaluate with
+	 * @return the result of the delegate expression
+	 */
+	@Override
+	public Object evaluate(EvaluationShell shell) {
+		long start = System.nanoTime();
+		Object result = this.delegate.evaluate(shell);
+		long nanos = System.nanoTime() - start;
+
+		long length = 0;
+		if (result instanceof Object[] results) {
+			for (Object element : results) {
+				length += ProfiledExpression.length(element);
+			}
+		} else length = ProfiledExpression.length(result);
+
+		this.profiler.record(this.source, this.name, nanos, length);
+		return result;
+	}
+
+	/**
+	 * Returns the length of the given result once rendered.
+	 *
+	 * @param result the result to measure
+	 * @return the rendered length, or 0 if the result is null
+	 */
+	private static long length(Object result) {
+		if (result == null) return 0;
+		return result instanceof CharSequence chars ? chars.length()
+				: result.toString().length();
+	}
+
+}
@@ -0,0 +1,128 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import dev.zyrakia.neuw.exception.EvaluationLimitException;
+import dev.zyrakia.neuw.exception.EvaluationLimitException.Limit;
+
+/**
+ * Tracks the instructions and time spent by the expressions of a single
+ * content, or of a single expression outside of a content, against the
+ * {@link RhinoEvaluationLimits} of a shell.
+ * <p>
+ * A budget is only used by the thread that created it.
+ */
+final class RhinoBudget {
+
+	/**
+	 * Represents the limits that the budget is checked against.
+	 */
+	private final RhinoEvaluationLimits limits;
+
+	/**
+	 * Represents the source of the content or expression that is charged to
+	 * the budget.
+	 */
+	private final String source;
+
+	/**
+	 * Represents the {@link System#nanoTime()} after which the budget is
+	 * exceeded, or {@link Long#MAX_VALUE} if there is no deadline.
+	 */
+	private final long deadline;
+
+	/**
+	 * Represents the amount of instructions executed by all expressions.
+	 */
+	private long contentInstructions = 0;
+
+	/**
+	 * Represents the amount of instructions executed by the current
+	 * expression.
+	 */
+	private long expressionInstructions = 0;
+
+	/**
+	 * Represents the expression that is currently executing.
+	 */
+	private RhinoCompiledExpression expression;
+
+	/**
+	 * Creates a new budget with the given limits, starting the deadline now.
+	 * <p>
+	 * The given source is reported when a limit is exceeded, rather than the
+	 * source of the exceeding expression, since compiled expressions are
+	 * shared between every source that contains the same expression.
+	 *
+	 * @param limits the limits to check against
+	 * @param source the source of the content or expression that is charged
+	 * to the budget
+	 */
+	RhinoBudget(RhinoEvaluationLimits limits, String source) {
+		this.limits = limits;
+		this.source = source;
+
+		long now = System.nanoTime();
+		long timeout = limits.timeout() == null ? Long.MAX_VALUE
+				: limits.timeout().toNanos();
+		this.deadline = timeout >= Long.MAX_VALUE - now ? Long.MAX_VALUE
+				: now + timeout;
+	}
+
+	/**
+	 * Starts charging the given expression, resetting the expression budget.
+	 *
+	 * @param expression the expression that starts executing
+	 * @throws EvaluationLimitException if the deadline has already passed
+	 */
+	void begin(RhinoCompiledExpression expression)
+			throws EvaluationLimitException {
+		this.expression = expression;
+		this.expressionInstructions = 0;
+
+		if (this.isOverdue()) this.exceed(Limit.TIMEOUT);
+	}
+
+	/**
+	 * Charges the given amount of instructions to the current expression.
+	 *
+	 * @param instructions the amount of executed instructions
+	 * @throws EvaluationLimitException if any of the limits are exceeded
+	 */
+	void charge(int instructions) throws EvaluationLimitException {
+		this.expressionInstructions += instructions;
+		this.contentInstructions += instructions;
+
+		long expressionBudget = this.limits.expressionInstructions();
+		if (expressionBudget > 0
+				&& this.expressionInstructions > expressionBudget)
+			this.exceed(Limit.EXPRESSION_INSTRUCTIONS);
+
+		long contentBudget = this.limits.contentInstructions();
+		if (contentBudget > 0 && this.contentInstructions > contentBudget)
+			this.exceed(Limit.CONTENT_INSTRUCTIONS);
+
+		if (this.isOverdue()) this.exceed(Limit.TIMEOUT);
+	}
+
+	/**
+	 * Returns whether the deadline of this budget has passed.
+	 *
+	 * @return true if the deadline has passed, false otherwise
+	 */
+	private boolean isOverdue() {
+		return this.deadline != Long.MAX_VALUE
+				&& System.nanoTime() - this.deadline > 0;
+	}
+
+	/**
+	 * Throws an exception for the current expression exceeding the given
+	 * limit.
+	 *
+	 * @param limit the exceeded limit
+	 * @throws EvaluationLimitException always
+	 */
+	private void exceed(Limit limit) throws EvaluationLimitException {
+		throw new EvaluationLimitException(limit, this.source, this.expression
+				.expression());
+	}
+
+}
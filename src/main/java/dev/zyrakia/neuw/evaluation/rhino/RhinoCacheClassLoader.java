@@ -0,0 +1,61 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.Context;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class loader that defines classes generated by Rhino from their class
+ * bytes, instead of having Rhino generate them again.
+ * <p>
+ * The bytes of a class are registered before the class is requested, so that
+ * the classes that make up a single script can refer to each other regardless
+ * of the order they are loaded in.
+ */
+public class RhinoCacheClassLoader extends ClassLoader {
+
+	/**
+	 * The bytes of every class that has been registered, but not yet defined.
+	 */
+	private final Map<String, byte[]> pending = new HashMap<>();
+
+	/**
+	 * Creates a new class loader whose parent is the class loader of Rhino, so
+	 * that generated classes can refer to the Rhino runtime.
+	 */
+	public RhinoCacheClassLoader() {
+		super(Context.class.getClassLoader());
+	}
+
+	/**
+	 * Defines the given classes and returns the class of the given name.
+	 * Classes that are already defined are kept, so that threads that loaded
+	 * the same script at once all receive the same class.
+	 *
+	 * @param classes the bytes of each class, by their binary names
+	 * @param name the name of the class to return
+	 * @return the class of the given name
+	 * @throws ClassNotFoundException if the class of the given name was not
+	 * one of the given classes, and cannot be found otherwise
+	 */
+	public synchronized Class<?> define(Map<String, byte[]> classes,
+			String name) throws ClassNotFoundException {
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			if (this.findLoadedClass(entry.getKey()) == null)
+				this.pending.put(entry.getKey(), entry.getValue());
+		}
+
+		return this.loadClass(name);
+	}
+
+	@Override
+	protected synchronized Class<?> findClass(String name)
+			throws ClassNotFoundException {
+		byte[] bytes = this.pending.remove(name);
+		if (bytes == null) throw new ClassNotFoundException(name);
+
+		return this.defineClass(name, bytes, 0, bytes.length);
+	}
+
+}
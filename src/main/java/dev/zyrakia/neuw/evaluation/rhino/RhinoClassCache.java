@@ -0,0 +1,302 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of the classes that Rhino generates when compiling
+ * scripts to JVM bytecode.
+ * <p>
+ * Generated classes are stored in a directory, under a hash of the script
+ * text, the Rhino version and the compiler settings, so that they can be
+ * loaded by later launches of the application instead of being generated
+ * again. Since cached classes are loaded as code, the directory must only be
+ * writable by trusted users.
+ * <p>
+ * Entries are read, generated and written outside of any lock, so a slow miss
+ * never blocks lookups of other scripts, nor pins the carrier of a virtual
+ * thread. Threads that miss the same script at once may each load it, but
+ * only the first loaded class is kept and used.
+ */
+public class RhinoClassCache {
+
+	/**
+	 * The prefix of the names of generated classes.
+	 */
+	private static final String CLASS_PREFIX = "dev.zyrakia.neuw.gen.Script";
+
+	/**
+	 * The file extension of cache entries.
+	 */
+	private static final String ENTRY_EXTENSION = ".classes";
+
+	/**
+	 * The least amount of bytes that a class takes up in an entry, which is
+	 * the length of its name followed by the length of its bytes.
+	 */
+	private static final int MIN_CLASS_SIZE = Short.BYTES + Integer.BYTES;
+
+	/**
+	 * The directory that cache entries are stored in.
+	 */
+	private final Path directory;
+
+	/**
+	 * The class loader used to define cached classes.
+	 */
+	private final RhinoCacheClassLoader classLoader =
+			new RhinoCacheClassLoader();
+
+	/**
+	 * The main classes of scripts that have already been defined in this
+	 * launch, by their cache key.
+	 */
+	private final Map<String, Class<?>> defined = new ConcurrentHashMap<>();
+
+	/**
+	 * The amount of scripts that were loaded from the cache.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * The amount of scripts that had to be generated.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a new cache that stores entries in the given directory.
+	 *
+	 * @param directory the directory to store entries in, which is created if
+	 * it does not exist when the first entry is stored
+	 */
+	public RhinoClassCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the directory that cache entries are stored in.
+	 *
+	 * @return the cache directory
+	 */
+	public Path getDirectory() { return this.directory; }
+
+	/**
+	 * Returns the compiled script of the given text at the given optimization
+	 * level, loading its classes from the cache if possible, and generating
+	 * and storing them otherwise.
+	 *
+	 * @param cx the context to compile with
+	 * @param script the script to compile
+	 * @param source the source of the script
+	 * @param level the optimization level to compile with, which must not be
+	 * interpreted
+	 * @return the compiled script
+	 * @throws IllegalArgumentException if the optimization level is
+	 * interpreted
+	 */
+	public Script compile(Context cx, String script, String source, int level)
+			throws IllegalArgumentException {
+		if (level < 0) throw new IllegalArgumentException(
+				"Interpreted scripts do not generate classes.");
+
+		CompilerEnvirons environment = new CompilerEnvirons();
+		environment.initFromContext(cx);
+		environment.setOptimizationLevel(level);
+
+		String key = RhinoClassCache.key(cx, environment, script);
+		Class<?> scriptClass = this.defined.get(key);
+
+		if (scriptClass == null) {
+			Class<?> loaded = this.load(environment, key, script, source);
+			scriptClass = this.defined.putIfAbsent(key, loaded);
+			if (scriptClass == null) scriptClass = loaded;
+		} else this.hits.incrementAndGet();
+
+		try {
+			return (Script) scriptClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("The cached script class \""
+					+ scriptClass.getName() + "\" cannot be instantiated.", e);
+		}
+	}
+
+	/**
+	 * Loads the main class of the given script from its cache entry, or
+	 * generates and stores the classes if there is no usable entry.
+	 *
+	 * @param environment the environment to compile with
+	 * @param key the cache key of the script
+	 * @param script the script to compile
+	 * @param source the source of the script
+	 * @return the main class of the script
+	 */
+	private Class<?> load(CompilerEnvirons environment, String key,
+			String script, String source) {
+		String mainName = CLASS_PREFIX + key;
+		Path entry = this.directory.resolve(key + ENTRY_EXTENSION);
+
+		Map<String, byte[]> classes = RhinoClassCache.read(entry);
+		if (classes != null && classes.containsKey(mainName)) {
+			try {
+				Class<?> scriptClass = this.classLoader
+						.define(classes, mainName);
+				this.hits.incrementAndGet();
+				return scriptClass;
+			} catch (ClassNotFoundException | LinkageError e) {
+				// The entry is unusable, so it is generated again below.
+			}
+		}
+
+		this.misses.incrementAndGet();
+		Object[] generated = new ClassCompiler(environment)
+				.compileToClassFiles(script, source, 0, mainName);
+
+		classes = new LinkedHashMap<>();
+		for (int i = 0; i < generated.length; i += 2) {
+			classes.put((String) generated[i], (byte[]) generated[i + 1]);
+		}
+
+		this.write(entry, classes);
+
+		try {
+			return this.classLoader.define(classes, mainName);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Rhino did not generate the "
+					+ "class \"" + mainName + "\".", e);
+		}
+	}
+
+	/**
+	 * Reads the classes stored in the given entry. Every count and length in
+	 * the entry is checked against the bytes that remain in it, so that a
+	 * corrupt or truncated entry is treated as missing instead of allocating
+	 * arbitrary amounts of memory.
+	 *
+	 * @param entry the entry to read
+	 * @return the bytes of each class by their names, or {@code null} if the
+	 * entry does not exist, cannot be read or is invalid
+	 */
+	private static Map<String, byte[]> read(Path entry) {
+		try (InputStream in = new ByteArrayInputStream(Files
+				.readAllBytes(entry));
+				DataInputStream data = new DataInputStream(in)) {
+			int count = data.readInt();
+			if (count < 0 || count > data.available() / MIN_CLASS_SIZE)
+				return null;
+
+			Map<String, byte[]> classes = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				String name = data.readUTF();
+				int length = data.readInt();
+				if (length < 0 || length > data.available()) return null;
+
+				byte[] bytes = new byte[length];
+				data.readFully(bytes);
+				classes.put(name, bytes);
+			}
+
+			return data.available() == 0 ? classes : null;
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the given classes to the given entry. The entry is written to a
+	 * temporary file first, so that concurrent launches never read a partially
+	 * written entry. Failing to write the entry is not an error, since the
+	 * cache is only an optimization.
+	 *
+	 * @param entry the entry to write
+	 * @param classes the bytes of each class by their names
+	 */
+	private void write(Path entry, Map<String, byte[]> classes) {
+		try {
+			Files.createDirectories(this.directory);
+			Path temp = Files.createTempFile(this.directory, null, ".tmp");
+
+			try (OutputStream out = Files.newOutputStream(temp);
+					DataOutputStream data = new DataOutputStream(out)) {
+				data.writeInt(classes.size());
+
+				for (Map.Entry<String, byte[]> generated : classes.entrySet()) {
+					data.writeUTF(generated.getKey());
+					data.writeInt(generated.getValue().length);
+					data.write(generated.getValue());
+				}
+			}
+
+			try {
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// The cache is only an optimization, so the script is still usable.
+		}
+	}
+
+	/**
+	 * Returns the cache key of the given script, which is a hash of the script
+	 * text, the Rhino version and any compiler settings that affect the
+	 * generated classes.
+	 *
+	 * @param cx the context the script is compiled with
+	 * @param environment the environment the script is compiled with
+	 * @param script the script text
+	 * @return the cache key
+	 */
+	private static String key(Context cx, CompilerEnvirons environment,
+			String script) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			String settings = cx.getImplementationVersion() + "\n"
+					+ environment.getLanguageVersion() + "\n"
+					+ environment.getOptimizationLevel() + "\n"
+					+ environment.isGenerateObserverCount() + "\n";
+
+			digest.update(settings.getBytes(StandardCharsets.UTF_8));
+			digest.update(script.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+	/**
+	 * Returns the amount of scripts that were loaded from the cache, either
+	 * from the directory or from classes defined earlier in this launch.
+	 *
+	 * @return the hit count
+	 */
+	public long hits() { return this.hits.get(); }
+
+	/**
+	 * Returns the amount of scripts whose classes had to be generated.
+	 *
+	 * @return the miss count
+	 */
+	public long misses() { return this.misses.get(); }
+
+}
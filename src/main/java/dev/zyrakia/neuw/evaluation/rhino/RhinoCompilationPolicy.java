@@ -0,0 +1,90 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.Context;
+
+/**
+ * Describes how a {@link RhinoEvaluationShell} compiles expressions.
+ * <p>
+ * Expressions are first compiled with the initial optimization level. Once an
+ * expression has been executed as many times as the promotion threshold, it is
+ * compiled again with the promoted optimization level. An optimization level
+ * of {@code -1} runs expressions in the interpreter, which is cheap to compile
+ * but slow to execute, while levels of {@code 0} and above compile expressions
+ * to JVM bytecode.
+ *
+ * @param initialLevel the optimization level expressions are first compiled
+ * with
+ * @param promotedLevel the optimization level hot expressions are compiled with
+ * @param promotionThreshold the amount of executions after which an expression
+ * is promoted, or {@code 0} to never promote expressions
+ */
+public record RhinoCompilationPolicy(int initialLevel, int promotedLevel,
+		int promotionThreshold) {
+
+	/**
+	 * Creates a new compilation policy.
+	 *
+	 * @param initialLevel the optimization level expressions are first
+	 * compiled with
+	 * @param promotedLevel the optimization level hot expressions are compiled
+	 * with
+	 * @param promotionThreshold the amount of executions after which an
+	 * expression is promoted, or {@code 0} to never promote expressions
+	 * @throws IllegalArgumentException if either optimization level is not
+	 * valid, or the promotion threshold is negative
+	 */
+	public RhinoCompilationPolicy {
+		Context.checkOptimizationLevel(initialLevel);
+		Context.checkOptimizationLevel(promotedLevel);
+
+		if (promotionThreshold < 0)
+			throw new IllegalArgumentException(
+					"The promotion threshold cannot be negative.");
+	}
+
+	/**
+	 * Returns whether an expression compiled with the given level should be
+	 * promoted after the given amount of executions.
+	 *
+	 * @param level the optimization level the expression is compiled with
+	 * @param executions the amount of times the expression has been executed
+	 * @return true if the expression should be promoted, false otherwise
+	 */
+	public boolean shouldPromote(int level, long executions) {
+		return this.promotionThreshold > 0 && level < this.promotedLevel
+				&& executions >= this.promotionThreshold;
+	}
+
+	/**
+	 * Returns a policy that runs every expression in the interpreter.
+	 *
+	 * @return the created policy
+	 */
+	public static RhinoCompilationPolicy interpreted() {
+		return new RhinoCompilationPolicy(-1, -1, 0);
+	}
+
+	/**
+	 * Returns a policy that compiles every expression to JVM bytecode right
+	 * away.
+	 *
+	 * @return the created policy
+	 */
+	public static RhinoCompilationPolicy compiled() {
+		return new RhinoCompilationPolicy(9, 9, 0);
+	}
+
+	/**
+	 * Returns a policy that runs expressions in the interpreter, until they
+	 * have been executed the given amount of times, after which they are
+	 * compiled to JVM bytecode.
+	 *
+	 * @param promotionThreshold the amount of executions after which an
+	 * expression is compiled to bytecode
+	 * @return the created policy
+	 */
+	public static RhinoCompilationPolicy adaptive(int promotionThreshold) {
+		return new RhinoCompilationPolicy(-1, 9, promotionThreshold);
+	}
+
+}
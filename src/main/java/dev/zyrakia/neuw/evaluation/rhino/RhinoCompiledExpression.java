@@ -0,0 +1,232 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import dev.zyrakia.neuw.evaluation.CompiledExpression;
+import dev.zyrakia.neuw.evaluation.DeferredExpression;
+import dev.zyrakia.neuw.evaluation.EvaluationShell;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * An expression that has been compiled into a Rhino {@link Script}.
+ * <p>
+ * The script is not bound to any scope, so it can be executed by any
+ * {@link RhinoEvaluationShell}. Other shells will evaluate the expression text
+ * instead.
+ * <p>
+ * The amount of executions is counted, so that the expression can be promoted
+ * to a higher optimization level once it is hot, as described by a
+ * {@link RhinoCompilationPolicy}.
+ */
+public final class RhinoCompiledExpression implements CompiledExpression {
+
+	/**
+	 * The text of the expression that was compiled.
+	 */
+	private final String expression;
+
+	/**
+	 * The source that the expression was compiled from.
+	 */
+	private final String source;
+
+	/**
+	 * Whether the result of the expression only depends on the variables it
+	 * reads.
+	 */
+	private final boolean pure;
+
+	/**
+	 * The names referenced by the expression, or null if they are unknown.
+	 */
+	private final Set<String> references;
+
+	/**
+	 * Whether the expression evaluates every expression of a template at
+	 * once, as generated by {@link RhinoTemplateFunction}.
+	 */
+	private final boolean template;
+
+	/**
+	 * The amount of times the expression has been executed.
+	 */
+	private final AtomicLong executions = new AtomicLong();
+
+	/**
+	 * The compiled script of the expression.
+	 */
+	private volatile Script script;
+
+	/**
+	 * The optimization level the current script was compiled with.
+	 */
+	private volatile int level;
+
+	/**
+	 * Whether the expression can still be promoted to a higher level.
+	 */
+	private volatile boolean promotable = true;
+
+	/**
+	 * Creates a new compiled expression.
+	 *
+	 * @param expression the text of the expression
+	 * @param source the source of the expression
+	 * @param script the compiled script of the expression
+	 * @param level the optimization level the script was compiled with
+	 * @param analysis the analysis of the expression
+	 */
+	RhinoCompiledExpression(String expression, String source, Script script,
+			int level, RhinoExpressionAnalyzer.Analysis analysis) {
+		this(expression, source, script, level, analysis, false);
+	}
+
+	/**
+	 * Creates a new compiled expression, which may evaluate every expression
+	 * of a template at once.
+	 *
+	 * @param expression the text of the expression
+	 * @param source the source of the expression
+	 * @param script the compiled script of the expression
+	 * @param level the optimization level the script was compiled with
+	 * @param analysis the analysis of the expression
+	 * @param template whether the expression was generated by
+	 * {@link RhinoTemplateFunction}, so that its array result is returned as
+	 * an array of the results of each expression
+	 */
+	RhinoCompiledExpression(String expression, String source, Script script,
+			int level, RhinoExpressionAnalyzer.Analysis analysis,
+			boolean template) {
+		this.expression = expression;
+		this.source = source;
+		this.pure = analysis.pure();
+		this.references = analysis.references();
+		this.template = template;
+		this.script = script;
+		this.level = level;
+	}
+
+	@Override
+	public String expression() { return this.expression; }
+
+	@Override
+	public String source() { return this.source; }
+
+	/**
+	 * Returns whether the result of this expression only depends on the
+	 * variables it reads, meaning it can be memoized within a shell.
+	 *
+	 * @return true if the expression is pure, false otherwise
+	 * @see RhinoExpressionAnalyzer
+	 */
+	@Override
+	public boolean isPure() { return this.pure; }
+
+	/**
+	 * Returns the names referenced by this expression, which include every
+	 * variable it reads.
+	 *
+	 * @return the referenced names, or {@code null} if they are unknown
+	 * @see RhinoExpressionAnalyzer
+	 */
+	@Override
+	public Set<String> references() { return this.references; }
+
+	/**
+	 * Returns the current compiled script of this expression.
+	 *
+	 * @return the script
+	 */
+	public Script script() { return this.script; }
+
+	/**
+	 * Returns the optimization level the current script was compiled with.
+	 *
+	 * @return the optimization level
+	 */
+	public int optimizationLevel() { return this.level; }
+
+	/**
+	 * Returns the amount of times this expression has been executed.
+	 *
+	 * @return the execution count
+	 */
+	public long executions() { return this.executions.get(); }
+
+	/**
+	 * Returns whether this expression can still be promoted to a higher
+	 * optimization level.
+	 *
+	 * @return false if a previous promotion failed, true otherwise
+	 */
+	public boolean isPromotable() { return this.promotable; }
+
+	/**
+	 * Records an execution of this expression.
+	 *
+	 * @return the amount of executions, including this one
+	 */
+	long recordExecution() {
+		return this.executions.incrementAndGet();
+	}
+
+	/**
+	 * Replaces the script of this expression with one compiled at the given
+	 * optimization level. If the given compiler fails, the current script is
+	 * kept and the expression will not be promoted again.
+	 *
+	 * @param level the optimization level to promote to
+	 * @param compiler the compiler that compiles this expression with the
+	 * given level
+	 */
+	synchronized void promote(int level, Supplier<Script> compiler) {
+		if (!this.promotable || this.level >= level) return;
+
+		try {
+			this.script = compiler.get();
+			this.level = level;
+		} catch (RuntimeException e) {
+			this.promotable = false;
+		}
+	}
+
+	@Override
+	public Object evaluate(EvaluationShell shell) {
+		if (shell instanceof RhinoEvaluationShell) {
+			RhinoEvaluationShell rhino = (RhinoEvaluationShell) shell;
+			Object result = rhino.execute(this);
+			if (this.template && result instanceof NativeArray array)
+				return RhinoCompiledExpression.toResults(array);
+
+			return result;
+		}
+
+		return new DeferredExpression(this.expression, this.source)
+				.evaluate(shell);
+	}
+
+	/**
+	 * Copies the elements of the given array without converting them, the
+	 * same way results of single expressions are returned.
+	 *
+	 * @param array the array to copy
+	 * @return the elements of the array
+	 */
+	private static Object[] toResults(NativeArray array) {
+		Object[] results = new Object[(int) array.getLength()];
+		for (int i = 0; i < results.length; i++) {
+			Object result = ScriptableObject.getProperty(array, i);
+			results[i] = result == Scriptable.NOT_FOUND ? Undefined.instance
+					: result;
+		}
+
+		return results;
+	}
+
+}
@@ -0,0 +1,41 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * The factory of every context entered by the Rhino evaluation classes. It
+ * forwards the instruction counts observed by Rhino to the
+ * {@link RhinoBudget} that is attached to the executing context, if any.
+ */
+final class RhinoContextFactory extends ContextFactory {
+
+	/**
+	 * The factory used to enter contexts.
+	 */
+	static final RhinoContextFactory INSTANCE = new RhinoContextFactory();
+
+	/**
+	 * The key that budgets are attached to contexts with.
+	 */
+	static final Object BUDGET_KEY = new Object();
+
+	/**
+	 * Creates the factory.
+	 */
+	private RhinoContextFactory() {}
+
+	/**
+	 * Charges the observed instructions to the budget attached to the given
+	 * context.
+	 *
+	 * @param cx the context that executed the instructions
+	 * @param instructionCount the amount of executed instructions
+	 */
+	@Override
+	protected void observeInstructionCount(Context cx, int instructionCount) {
+		if (cx.getThreadLocal(BUDGET_KEY) instanceof RhinoBudget budget)
+			budget.charge(instructionCount);
+	}
+
+}
@@ -0,0 +1,46 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.Context;
+
+/**
+ * Keeps a Rhino {@link Context} entered on each thread that evaluates through
+ * it, so that repeated evaluations do not create and enter a new context each
+ * time.
+ * <p>
+ * A pooled context stays entered until {@link #release()} is called on its
+ * thread, or the thread ends.
+ */
+public class RhinoContextPool {
+
+	/**
+	 * The context that has been entered on each thread.
+	 */
+	private static final ThreadLocal<Context> CONTEXTS = new ThreadLocal<>();
+
+	/**
+	 * Returns the pooled context of the current thread, entering a new one if
+	 * there is none. The returned context must not be closed.
+	 *
+	 * @return the entered context
+	 */
+	static Context acquire() {
+		Context cx = CONTEXTS.get();
+		if (cx != null && Context.getCurrentContext() == cx) return cx;
+
+		cx = RhinoContextFactory.INSTANCE.enterContext();
+		CONTEXTS.set(cx);
+		return cx;
+	}
+
+	/**
+	 * Exits the pooled context of the current thread, if there is one.
+	 */
+	public static void release() {
+		Context cx = CONTEXTS.get();
+		if (cx == null) return;
+
+		CONTEXTS.remove();
+		if (Context.getCurrentContext() == cx) cx.close();
+	}
+
+}
@@ -0,0 +1,168 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import dev.zyrakia.neuw.evaluation.CompiledExpression;
+import dev.zyrakia.neuw.evaluation.DeferredExpression;
+import dev.zyrakia.neuw.evaluation.EvaluationShell;
+
+import java.util.Set;
+
+/**
+ * An expression that is simple enough to be resolved without Rhino.
+ * <p>
+ * Bare identifiers such as {@code projectName} and simple member accesses such
+ * as {@code author.name} are resolved from the variables of the shell, and
+ * string literals without escapes are resolved to their content. If a
+ * reference cannot be resolved from the variables, for example because it
+ * refers to a standard object, the expression is executed by Rhino instead.
+ */
+public final class RhinoDirectExpression implements CompiledExpression {
+
+	/**
+	 * The text of the expression.
+	 */
+	private final String expression;
+
+	/**
+	 * The source of the expression.
+	 */
+	private final String source;
+
+	/**
+	 * The property names that are accessed, starting with the variable name,
+	 * or null if this expression is a literal.
+	 */
+	private final String[] path;
+
+	/**
+	 * The value of the literal, or null if this expression is a reference.
+	 */
+	private final String literal;
+
+	/**
+	 * Creates a new direct expression.
+	 *
+	 * @param expression the text of the expression
+	 * @param source the source of the expression
+	 * @param path the accessed property names, or null for a literal
+	 * @param literal the value of the literal, or null for a reference
+	 */
+	private RhinoDirectExpression(String expression, String source,
+			String[] path, String literal) {
+		this.expression = expression;
+		this.source = source;
+		this.path = path;
+		this.literal = literal;
+	}
+
+	/**
+	 * Classifies the given expression, returning a direct expression if it is
+	 * a reference or string literal that can be resolved without Rhino.
+	 *
+	 * @param expression the expression to classify
+	 * @param source the source of the expression
+	 * @return the direct expression, or null if the expression needs to be
+	 * executed by Rhino
+	 */
+	public static RhinoDirectExpression classify(String expression,
+			String source) {
+		String text = expression.strip();
+		if (text.isEmpty()) return null;
+
+		char first = text.charAt(0);
+		if (first == '\'' || first == '"') {
+			if (text.length() < 2 || text.charAt(text.length() - 1) != first)
+				return null;
+
+			String literal = text.substring(1, text.length() - 1);
+			for (int i = 0; i < literal.length(); i++) {
+				char c = literal.charAt(i);
+				if (c == first || c == '\\' || c == '\n' || c == '\r')
+					return null;
+			}
+
+			return new RhinoDirectExpression(expression, source, null, literal);
+		}
+
+		String[] path = text.split("\\.", -1);
+		for (String name : path) {
+			if (!RhinoDirectExpression.isIdentifier(name)) return null;
+		}
+
+		if (path[0].equals("this")) return null;
+
+		return new RhinoDirectExpression(expression, source, path, null);
+	}
+
+	/**
+	 * Returns whether the given name is a plain Javascript identifier.
+	 *
+	 * @param name the name to check
+	 * @return true if the name is an identifier, false otherwise
+	 */
+	private static boolean isIdentifier(String name) {
+		if (name.isEmpty()) return false;
+		if (!Character.isJavaIdentifierStart(name.charAt(0))) return false;
+
+		for (int i = 1; i < name.length(); i++) {
+			if (!Character.isJavaIdentifierPart(name.charAt(i))) return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public String expression() { return this.expression; }
+
+	@Override
+	public String source() { return this.source; }
+
+	@Override
+	public boolean isDirect() { return true; }
+
+	/**
+	 * Returns whether this expression is pure, which it always is, since it
+	 * only reads a variable or is a literal.
+	 *
+	 * @return true
+	 */
+	@Override
+	public boolean isPure() { return true; }
+
+	/**
+	 * Returns the variable name of this expression if it is a reference.
+	 *
+	 * @return the referenced variable name, or an empty set if this expression
+	 * is a literal
+	 */
+	@Override
+	public Set<String> references() {
+		return this.path == null ? Set.of() : Set.of(this.path[0]);
+	}
+
+	/**
+	 * Returns the property names accessed by this expression, starting with
+	 * the variable name.
+	 *
+	 * @return the accessed names, or null if this expression is a literal
+	 */
+	String[] path() { return this.path; }
+
+	/**
+	 * Returns the value of this expression if it is a literal.
+	 *
+	 * @return the literal value, or null if this expression is a reference
+	 */
+	String literal() { return this.literal; }
+
+	@Override
+	public Object evaluate(EvaluationShell shell) {
+		if (shell instanceof RhinoEvaluationShell) {
+			RhinoEvaluationShell rhino = (RhinoEvaluationShell) shell;
+			return rhino.resolve(this);
+		}
+
+		return new DeferredExpression(this.expression, this.source)
+				.evaluate(shell);
+	}
+
+}
@@ -0,0 +1,68 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import java.time.Duration;
+
+/**
+ * Describes the limits imposed on expressions executed by a
+ * {@link RhinoEvaluationShell}, so that a runaway expression fails instead of
+ * stalling generation.
+ * <p>
+ * Instructions are counted by Rhino in batches of
+ * {@link #OBSERVATION_INTERVAL}, so a budget may be overrun by up to one batch
+ * before it is noticed. The timeout is checked whenever instructions are
+ * counted, so it cannot interrupt time spent outside of Javascript, nor
+ * scripts compiled to bytecode before the limits were set.
+ *
+ * @param expressionInstructions the amount of instructions a single
+ * expression may execute, or 0 for no limit
+ * @param contentInstructions the amount of instructions all expressions of a
+ * single content may execute together, or 0 for no limit
+ * @param timeout the wall-clock time a content may take to render, or a
+ * single expression outside of a content may take to execute, or
+ * {@code null} for no limit
+ */
+public record RhinoEvaluationLimits(long expressionInstructions,
+		long contentInstructions, Duration timeout) {
+
+	/**
+	 * The amount of instructions Rhino executes between each observation.
+	 */
+	public static final int OBSERVATION_INTERVAL = 10_000;
+
+	/**
+	 * Creates a new set of limits.
+	 *
+	 * @throws IllegalArgumentException if any of the limits are negative
+	 */
+	public RhinoEvaluationLimits {
+		if (expressionInstructions < 0 || contentInstructions < 0)
+			throw new IllegalArgumentException(
+					"Instruction budgets cannot be negative.");
+		if (timeout != null && timeout.isNegative())
+			throw new IllegalArgumentException("A timeout cannot be negative.");
+	}
+
+	/**
+	 * Creates limits that only restrict the amount of instructions a single
+	 * expression may execute.
+	 *
+	 * @param expressionInstructions the amount of instructions a single
+	 * expression may execute
+	 * @return the created limits
+	 */
+	public static RhinoEvaluationLimits instructions(
+			long expressionInstructions) {
+		return new RhinoEvaluationLimits(expressionInstructions, 0, null);
+	}
+
+	/**
+	 * Creates limits that only restrict the wall-clock time of evaluations.
+	 *
+	 * @param timeout the wall-clock time a content may take to render
+	 * @return the created limits
+	 */
+	public static RhinoEvaluationLimits timeout(Duration timeout) {
+		return new RhinoEvaluationLimits(0, 0, timeout);
+	}
+
+}
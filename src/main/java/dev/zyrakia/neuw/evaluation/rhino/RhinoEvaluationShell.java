@@ -1,20 +1,164 @@
 package dev.zyrakia.neuw.evaluation.rhino;
 
+import dev.zyrakia.neuw.evaluation.CompiledExpression;
+import dev.zyrakia.neuw.evaluation.CompiledTemplate;
 import dev.zyrakia.neuw.evaluation.SourcedEvaluationShell;
+import dev.zyrakia.neuw.exception.EvaluationLimitException;
+import dev.zyrakia.neuw.util.AllocationCounter;
 import org.mozilla.javascript.Context;
-import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * An evaluation shell that evaluates Javascript with the Rhino engine.
+ * <p>
+ * Expressions are compiled once and kept in a {@link ScriptCache}, so
+ * expressions that are evaluated repeatedly only pay for their execution. How
+ * expressions are compiled is described by the
+ * {@link RhinoCompilationPolicy} of the shell.
+ * <p>
+ * Expressions executed by Rhino can be restricted by
+ * {@link RhinoEvaluationLimits}, in which case exceeding a limit raises an
+ * {@link EvaluationLimitException}.
  */
 public class RhinoEvaluationShell implements SourcedEvaluationShell {
 
+	/**
+	 * Represents a memoized {@code null} result.
+	 */
+	private static final Object NULL_RESULT = new Object();
+
 	/**
 	 * Represents the scope that expressions will be evaluated in.
 	 */
 	private final ScriptableObject sharedScope;
 
+	/**
+	 * Represents the cache of scripts compiled by this shell.
+	 */
+	private final ScriptCache scriptCache;
+
+	/**
+	 * Represents how expressions are compiled by this shell.
+	 */
+	private final RhinoCompilationPolicy compilationPolicy;
+
+	/**
+	 * Represents the persistent cache of classes generated when compiling
+	 * expressions to bytecode, if any.
+	 */
+	private final RhinoClassCache classCache;
+
+	/**
+	 * Represents the scratch scope of each thread, which expressions are
+	 * executed in when this shell is pooled.
+	 */
+	private final ThreadLocal<ScriptableObject> scratchScopes =
+			new ThreadLocal<>();
+
+	/**
+	 * Represents the counter of executions and their allocations, if they are
+	 * being tracked.
+	 */
+	private volatile AllocationCounter allocationCounter = null;
+
+	/**
+	 * Represents whether executions reuse a pooled context and scratch scope.
+	 */
+	private volatile boolean pooled = false;
+
+	/**
+	 * Represents the limits imposed on expressions executed by Rhino, if any.
+	 */
+	private volatile RhinoEvaluationLimits limits = null;
+
+	/**
+	 * Represents the budget of the content being rendered on each thread, if
+	 * limits are imposed.
+	 */
+	private final ThreadLocal<RhinoBudget> contentBudgets = new ThreadLocal<>();
+
+	/**
+	 * Represents the variables of the shared scope as native Javascript
+	 * values, which direct expressions are resolved from.
+	 */
+	private Map<String, Object> variables = Map.of();
+
+	/**
+	 * Represents the memoized results of pure expressions by their text, if
+	 * memoization is enabled.
+	 */
+	private volatile Map<String, Object> memoized = null;
+
+	/**
+	 * Represents the amount of expressions resolved directly.
+	 */
+	private final LongAdder directEvaluations = new LongAdder();
+
+	/**
+	 * Represents the amount of expressions executed by Rhino.
+	 */
+	private final LongAdder engineEvaluations = new LongAdder();
+
+	/**
+	 * Creates a new evaluation shell with the given scope, script cache,
+	 * compilation policy and class cache.
+	 * <p>
+	 * Each evaluated expression will be running within this scope. The caches
+	 * may be shared between multiple shells, since compiled scripts are not
+	 * bound to any scope.
+	 *
+	 * @param sharedScope the shared scope of the shell
+	 * @param scriptCache the cache used to hold compiled expressions
+	 * @param compilationPolicy the policy describing how expressions are
+	 * compiled
+	 * @param classCache the cache used to persist classes generated for
+	 * expressions compiled to bytecode, or {@code null} to always generate them
+	 */
+	public RhinoEvaluationShell(ScriptableObject sharedScope,
+			ScriptCache scriptCache, RhinoCompilationPolicy compilationPolicy,
+			RhinoClassCache classCache) {
+		this.sharedScope = sharedScope;
+		this.scriptCache = scriptCache;
+		this.compilationPolicy = compilationPolicy;
+		this.classCache = classCache;
+	}
+
+	/**
+	 * Creates a new evaluation shell with the given scope, script cache and
+	 * compilation policy.
+	 *
+	 * @param sharedScope the shared scope of the shell
+	 * @param scriptCache the cache used to hold compiled expressions
+	 * @param compilationPolicy the policy describing how expressions are
+	 * compiled
+	 */
+	public RhinoEvaluationShell(ScriptableObject sharedScope,
+			ScriptCache scriptCache, RhinoCompilationPolicy compilationPolicy) {
+		this(sharedScope, scriptCache, compilationPolicy, null);
+	}
+
+	/**
+	 * Creates a new evaluation shell with the given scope and script cache,
+	 * which runs every expression in the interpreter.
+	 *
+	 * @param sharedScope the shared scope of the shell
+	 * @param scriptCache the cache used to hold compiled expressions
+	 */
+	public RhinoEvaluationShell(ScriptableObject sharedScope,
+			ScriptCache scriptCache) {
+		this(sharedScope, scriptCache, RhinoCompilationPolicy.interpreted());
+	}
+
 	/**
 	 * Creates a new evaluation shell with the given scope.
 	 * <p>
@@ -23,20 +167,531 @@ public class RhinoEvaluationShell implements SourcedEvaluationShell {
 	 * @param sharedScope the shared scope of the shell
 	 */
 	public RhinoEvaluationShell(ScriptableObject sharedScope) {
-		this.sharedScope = sharedScope;
+		this(sharedScope, new ScriptCache());
+	}
+
+	/**
+	 * Returns the cache of scripts compiled by this shell.
+	 *
+	 * @return the script cache
+	 */
+	public ScriptCache getScriptCache() { return this.scriptCache; }
+
+	/**
+	 * Returns the policy describing how expressions are compiled by this shell.
+	 *
+	 * @return the compilation policy
+	 */
+	public RhinoCompilationPolicy getCompilationPolicy() {
+		return this.compilationPolicy;
+	}
+
+	/**
+	 * Returns the persistent cache of classes generated for expressions
+	 * compiled to bytecode.
+	 *
+	 * @return the class cache, or {@code null} if there is none
+	 */
+	public RhinoClassCache getClassCache() { return this.classCache; }
+
+	/**
+	 * Sets whether executions should reuse a context and scratch scope pooled
+	 * on the executing thread, instead of entering a new context and creating
+	 * a new scope for each execution.
+	 * <p>
+	 * The scratch scope is reused as long as expressions do not define any
+	 * properties within it, and is replaced otherwise, so expressions never
+	 * observe each other. Pooled contexts stay entered on their thread until
+	 * {@link #releaseThread()} or {@link RhinoContextPool#release()} is called
+	 * on it.
+	 *
+	 * @param pooled whether executions should be pooled
+	 */
+	public void setPooled(boolean pooled) { this.pooled = pooled; }
+
+	/**
+	 * Returns whether executions reuse a pooled context and scratch scope.
+	 *
+	 * @return true if executions are pooled, false otherwise
+	 */
+	public boolean isPooled() { return this.pooled; }
+
+	/**
+	 * Sets the limits imposed on expressions executed by Rhino. Expressions
+	 * that exceed them fail with an {@link EvaluationLimitException} that
+	 * names the expression and its source.
+	 * <p>
+	 * Scripts compiled to bytecode only count their instructions if they were
+	 * compiled while limits were set. Expressions compiled to bytecode before
+	 * that, including those held by compiled templates and the script cache,
+	 * are never checked against the instruction budgets or the timeout, so
+	 * limits should be set before any expression is compiled.
+	 * <p>
+	 * The timeout is only checked when an expression starts, and whenever
+	 * instructions are counted, so an expression that blocks in a Java call
+	 * is not interrupted until it returns to Javascript.
+	 *
+	 * @param limits the limits to impose, or {@code null} to impose none
+	 */
+	public void setLimits(RhinoEvaluationLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Returns the limits imposed on expressions executed by Rhino.
+	 *
+	 * @return the limits, or {@code null} if there are none
+	 */
+	public RhinoEvaluationLimits getLimits() { return this.limits; }
+
+	/**
+	 * Starts a shared budget for the expressions of the given content, if
+	 * limits are imposed.
+	 *
+	 * @param source the source of the content
+	 */
+	@Override
+	public void beginContent(String source) {
+		RhinoEvaluationLimits limits = this.limits;
+		if (limits != null) this.contentBudgets.set(new RhinoBudget(limits,
+				source));
+	}
+
+	/**
+	 * Discards the budget of the content that has been rendered.
+	 *
+	 * @param source the source of the content
+	 */
+	@Override
+	public void endContent(String source) {
+		this.contentBudgets.remove();
+	}
+
+	/**
+	 * Sets whether the executions of this shell, and the heap memory they
+	 * allocate, should be counted.
+	 *
+	 * @param tracked whether allocations should be tracked
+	 * @see #getAllocationCounter()
+	 */
+	public void setAllocationTracking(boolean tracked) {
+		this.allocationCounter = tracked ? new AllocationCounter() : null;
 	}
 
+	/**
+	 * Returns the counter of the executions of this shell and the heap memory
+	 * they allocated.
+	 *
+	 * @return the counter, or {@code null} if allocations are not tracked
+	 */
+	public AllocationCounter getAllocationCounter() {
+		return this.allocationCounter;
+	}
+
+	/**
+	 * Sets whether the results of pure expressions should be memoized by their
+	 * expression text, so that each pure expression is only executed once by
+	 * this shell, no matter how many times it appears.
+	 * <p>
+	 * Only primitive results are memoized, since objects could be modified by
+	 * whoever receives them. Disabling memoization discards any memoized
+	 * results.
+	 *
+	 * @param memoized whether results should be memoized
+	 * @see RhinoCompiledExpression#isPure()
+	 */
+	public void setMemoization(boolean memoized) {
+		this.memoized = memoized ? new ConcurrentHashMap<>() : null;
+	}
+
+	/**
+	 * Returns whether the results of pure expressions are memoized.
+	 *
+	 * @return true if results are memoized, false otherwise
+	 */
+	public boolean isMemoization() { return this.memoized != null; }
+
+	/**
+	 * Sets the variables that direct expressions are resolved from. These must
+	 * be the same values, converted to native Javascript values, that are
+	 * defined within the shared scope.
+	 *
+	 * @param variables the variables of the shared scope
+	 * @see RhinoDirectExpression
+	 */
+	void setVariables(Map<String, Object> variables) {
+		this.variables = Collections.unmodifiableMap(new HashMap<>(variables));
+	}
+
+	/**
+	 * Returns the amount of expressions that were resolved directly from the
+	 * variables, without being executed by Rhino.
+	 *
+	 * @return the direct evaluation count
+	 */
+	public long getDirectEvaluations() { return this.directEvaluations.sum(); }
+
+	/**
+	 * Returns the amount of expressions that were executed by Rhino.
+	 *
+	 * @return the engine evaluation count
+	 */
+	public long getEngineEvaluations() { return this.engineEvaluations.sum(); }
+
+	/**
+	 * Returns the share of evaluated expressions that were resolved directly,
+	 * without being executed by Rhino.
+	 *
+	 * @return the direct share between 0 and 1, or 0 if nothing was evaluated
+	 */
+	public double getDirectShare() {
+		long direct = this.getDirectEvaluations();
+		long total = direct + this.getEngineEvaluations();
+		return total == 0 ? 0 : (double) direct / total;
+	}
+
+	/**
+	 * Evaluates the given expression with the given source.
+	 * <p>
+	 * Since compiled scripts are cached by their expression text, any error
+	 * raised by a cached script will be attributed to the source that the
+	 * expression was first compiled with.
+	 *
+	 * @param expression the expression to evaluate
+	 * @param source the source of the expression
+	 * @return the result of the evaluation
+	 */
 	public Object evaluate(String expression, String source) {
-		try (Context cx = Context.enter()) {
-			cx.setOptimizationLevel(-1);
+		return this.compile(expression, source).evaluate(this);
+	}
+
+	/**
+	 * Compiles the given expression so that it can be evaluated by any
+	 * {@link RhinoEvaluationShell}.
+	 * <p>
+	 * Expressions that are plain references to variables or string literals
+	 * are classified as {@link RhinoDirectExpression}s, which are resolved
+	 * without Rhino. Any other expression is compiled into a script, which is
+	 * shared with any other compilation of the same expression text.
+	 *
+	 * @param expression the expression to compile
+	 * @param source the source of the expression
+	 * @return the compiled expression
+	 */
+	@Override
+	public CompiledExpression compile(String expression, String source) {
+		RhinoDirectExpression direct = RhinoDirectExpression
+				.classify(expression, source);
+		if (direct != null) return direct;
+
+		return this.compileCached(expression, source);
+	}
+
+	/**
+	 * Returns the cached script of the given expression, compiling it if it
+	 * is not cached.
+	 *
+	 * @param expression the expression to compile
+	 * @param source the source of the expression
+	 * @return the compiled expression
+	 */
+	private RhinoCompiledExpression compileCached(String expression,
+			String source) {
+		return this.scriptCache.get(expression,
+				(text) -> this.compileExpression(text, source));
+	}
+
+	/**
+	 * Compiles the given template into a single function that concatenates
+	 * every literal and expression segment, so that the entire template is
+	 * rendered within a single context entry.
+	 * <p>
+	 * The compiled function is not cached, since it is specific to the
+	 * template. It is analyzed like any other expression, and since the
+	 * generated array literal adds nothing impure, the function is pure
+	 * exactly when every expression of the template is, which
+	 * {@link CompiledTemplate#isPure()} relies on.
+	 *
+	 * @param template the template to compile
+	 * @return the compiled function, or {@code null} if any of the expressions
+	 * cannot be compiled as part of a larger expression
+	 * @see RhinoTemplateFunction
+	 */
+	@Override
+	public RhinoCompiledExpression compileTemplate(CompiledTemplate template) {
+		try (Context cx = RhinoContextFactory.INSTANCE.enterContext()) {
+			String function = RhinoTemplateFunction.generate(cx, template);
+			if (function == null) return null;
+
+			int level = this.compilationPolicy.initialLevel();
+			Script compiled = this
+					.compileScript(cx, function, template.source(), level);
+			RhinoExpressionAnalyzer.Analysis analysis = RhinoExpressionAnalyzer
+					.analyze(cx, function);
+
+			return new RhinoCompiledExpression(function, template.source(),
+					compiled, level, analysis, true);
+		} catch (EvaluatorException e) {
+			return null;
+		}
+	}
 
-			Scriptable expressionScope = cx.newObject(this.sharedScope);
-			expressionScope.setPrototype(this.sharedScope);
-			expressionScope.setParentScope(null);
+	/**
+	 * Compiles and analyzes the given expression with the initial
+	 * optimization level of the compilation policy.
+	 *
+	 * @param expression the expression to compile
+	 * @param source the source of the expression
+	 * @return the compiled expression
+	 */
+	private RhinoCompiledExpression compileExpression(String expression,
+			String source) {
+		try (Context cx = RhinoContextFactory.INSTANCE.enterContext()) {
+			int level = this.compilationPolicy.initialLevel();
+			Script compiled = this
+					.compileScript(cx, expression, source, level);
+			RhinoExpressionAnalyzer.Analysis analysis = RhinoExpressionAnalyzer
+					.analyze(cx, expression);
 
-			return cx
-					.evaluateString(expressionScope, expression, source, 0, null);
+			return new RhinoCompiledExpression(expression, source, compiled,
+					level, analysis);
 		}
 	}
 
+	/**
+	 * Compiles the given script with the given optimization level. Scripts
+	 * compiled to bytecode are loaded from the class cache if there is one,
+	 * and count their instructions if limits are imposed.
+	 *
+	 * @param cx the context to compile with
+	 * @param script the script to compile
+	 * @param source the source of the script
+	 * @param level the optimization level to compile with
+	 * @return the compiled script
+	 */
+	private Script compileScript(Context cx, String script, String source,
+			int level) {
+		cx.setGenerateObserverCount(this.limits != null);
+		if (level >= 0 && this.classCache != null)
+			return this.classCache.compile(cx, script, source, level);
+
+		int previousLevel = cx.getOptimizationLevel();
+		try {
+			cx.setOptimizationLevel(level);
+			return cx.compileString(script, source, 0, null);
+		} finally {
+			cx.setOptimizationLevel(previousLevel);
+		}
+	}
+
+	/**
+	 * Resolves the given direct expression from the variables of this shell.
+	 * If a reference cannot be resolved from the variables, the expression is
+	 * executed by Rhino instead.
+	 *
+	 * @param expression the expression to resolve
+	 * @return the result of the expression
+	 */
+	Object resolve(RhinoDirectExpression expression) {
+		if (expression.literal() != null) {
+			this.directEvaluations.increment();
+			return expression.literal();
+		}
+
+		String[] path = expression.path();
+		Object value = this.variables.get(path[0]);
+		boolean resolved = value != null || this.variables.containsKey(path[0]);
+
+		for (int i = 1; resolved && i < path.length; i++) {
+			if (!(value instanceof NativeObject)) {
+				resolved = false;
+				break;
+			}
+
+			NativeObject object = (NativeObject) value;
+			resolved = object.has(path[i], object);
+			if (resolved) value = object.get(path[i], object);
+		}
+
+		if (!resolved) return this.execute(this.compileCached(expression
+				.expression(), expression.source()));
+
+		this.directEvaluations.increment();
+		return value;
+	}
+
+	/**
+	 * Executes the given expression, returning its memoized result instead if
+	 * it is pure and has already been executed by this shell.
+	 *
+	 * @param expression the expression to execute
+	 * @return the result of the expression
+	 */
+	Object execute(RhinoCompiledExpression expression) {
+		Map<String, Object> memoized = expression.isPure() ? this.memoized
+				: null;
+		if (memoized != null) {
+			Object result = memoized.get(expression.expression());
+			if (result != null) return result == NULL_RESULT ? null : result;
+
+			result = this.executeEngine(expression);
+			if (RhinoEvaluationShell.isMemoizable(result)) memoized
+					.putIfAbsent(expression.expression(), result == null
+							? NULL_RESULT
+							: result);
+			return result;
+		}
+
+		return this.executeEngine(expression);
+	}
+
+	/**
+	 * Executes the given expression with Rhino within a child scope of the
+	 * shared scope, promoting the expression first if the compilation policy
+	 * deems it hot.
+	 *
+	 * The optimization level of the context is intentionally left untouched,
+	 * since it only affects compilation. Every script is compiled with the
+	 * level chosen by the compilation policy, and executes the same way
+	 * whatever level the executing context has.
+	 *
+	 * @param expression the expression to execute
+	 * @return the result of the expression
+	 */
+	private Object executeEngine(RhinoCompiledExpression expression) {
+		this.engineEvaluations.increment();
+
+		AllocationCounter counter = this.allocationCounter;
+		long start = counter == null ? 0 : counter.start();
+
+		try {
+			if (this.pooled) return this.executePooled(expression);
+
+			try (Context cx = RhinoContextFactory.INSTANCE.enterContext()) {
+				this.promoteIfHot(cx, expression);
+				return this.exec(cx, expression, this.newScope(cx));
+			}
+		} finally {
+			if (counter != null) counter.stop(start);
+		}
+	}
+
+	/**
+	 * Returns whether the given result can be memoized, meaning it is a
+	 * primitive that cannot be modified by whoever receives it.
+	 *
+	 * @param result the result to check
+	 * @return true if the result can be memoized, false otherwise
+	 */
+	private static boolean isMemoizable(Object result) {
+		return result == null || result instanceof String
+				|| result instanceof Number || result instanceof Boolean
+				|| result instanceof Undefined;
+	}
+
+	/**
+	 * Exits the pooled context of the current thread and discards its scratch
+	 * scope, if there are any.
+	 */
+	@Override
+	public void releaseThread() {
+		this.scratchScopes.remove();
+		RhinoContextPool.release();
+	}
+
+	/**
+	 * Executes the given expression with the pooled context and scratch scope
+	 * of the current thread. The scratch scope is discarded if the expression
+	 * defined anything within it.
+	 *
+	 * @param expression the expression to execute
+	 * @return the result of the expression
+	 */
+	private Object executePooled(RhinoCompiledExpression expression) {
+		Context cx = RhinoContextPool.acquire();
+		this.promoteIfHot(cx, expression);
+
+		ScriptableObject scope = this.scratchScopes.get();
+		if (scope == null) {
+			scope = this.newScope(cx);
+			this.scratchScopes.set(scope);
+		}
+
+		try {
+			return this.exec(cx, expression, scope);
+		} finally {
+			if (scope.getAllIds().length > 0) this.scratchScopes.remove();
+		}
+	}
+
+	/**
+	 * Executes the script of the given expression within the given scope,
+	 * charging it to the budget of the current content if limits are imposed.
+	 * Expressions outside of a content are given a budget of their own.
+	 *
+	 * @param cx the context to execute with
+	 * @param expression the expression to execute
+	 * @param scope the scope to execute in
+	 * @return the result of the expression
+	 * @throws EvaluationLimitException if the expression exceeds a limit
+	 */
+	private Object exec(Context cx, RhinoCompiledExpression expression,
+			ScriptableObject scope) throws EvaluationLimitException {
+		RhinoEvaluationLimits limits = this.limits;
+		if (limits == null) return expression.script().exec(cx, scope);
+
+		RhinoBudget budget = this.contentBudgets.get();
+		if (budget == null) budget = new RhinoBudget(limits, expression
+				.source());
+		budget.begin(expression);
+
+		Object key = RhinoContextFactory.BUDGET_KEY;
+		Object previousBudget = cx.getThreadLocal(key);
+		int previousThreshold = cx.getInstructionObserverThreshold();
+		cx.putThreadLocal(key, budget);
+		cx.setInstructionObserverThreshold(
+				RhinoEvaluationLimits.OBSERVATION_INTERVAL);
+
+		try {
+			return expression.script().exec(cx, scope);
+		} finally {
+			cx.setInstructionObserverThreshold(previousThreshold);
+			if (previousBudget == null) cx.removeThreadLocal(key);
+			else cx.putThreadLocal(key, previousBudget);
+		}
+	}
+
+	/**
+	 * Promotes the given expression if the compilation policy deems it hot.
+	 *
+	 * @param cx the context the expression is executed with
+	 * @param expression the expression that is being executed
+	 */
+	private void promoteIfHot(Context cx, RhinoCompiledExpression expression) {
+		long executions = expression.recordExecution();
+		if (!expression.isPromotable() || !this.compilationPolicy
+				.shouldPromote(expression.optimizationLevel(), executions))
+			return;
+
+		int level = this.compilationPolicy.promotedLevel();
+		expression.promote(level, () -> this.compileScript(cx, expression
+				.expression(), expression.source(), level));
+	}
+
+	/**
+	 * Creates a new child scope of the shared scope, in which expressions can
+	 * define properties without affecting the shared scope.
+	 *
+	 * @param cx the context to create the scope with
+	 * @return the created scope
+	 */
+	private ScriptableObject newScope(Context cx) {
+		ScriptableObject expressionScope = (ScriptableObject) cx
+				.newObject(this.sharedScope);
+		expressionScope.setPrototype(this.sharedScope);
+		expressionScope.setParentScope(null);
+
+		return expressionScope;
+	}
+
 }
@@ -4,18 +4,97 @@ import dev.zyrakia.neuw.evaluation.EvaluationShellFactory;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ScriptableObject;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * This is a factory for the {@link RhinoEvaluationShell}. It will create a
  * secure scope which does not allow accessing anything of the host application
  * unless it is provided.
+ * <p>
+ * The standard library is initialized and sealed only once per JVM, and each
+ * created shell only adds a thin layer of variables on top of it.
  */
 public class RhinoEvaluationShellFactory implements EvaluationShellFactory {
 
+	/**
+	 * Holds the sealed standard library root, which is initialized when it is
+	 * first used.
+	 */
+	private static class StandardRoot {
+
+		/**
+		 * The sealed scope that holds the safe standard objects.
+		 */
+		private static final ScriptableObject INSTANCE = StandardRoot.create();
+
+		/**
+		 * Creates the sealed scope that holds the safe standard objects.
+		 *
+		 * @return the created scope
+		 */
+		private static ScriptableObject create() {
+			try (Context cx = RhinoContextFactory.INSTANCE.enterContext()) {
+				ScriptableObject root = cx.initSafeStandardObjects(null, true);
+				root.sealObject();
+				return root;
+			}
+		}
+
+	}
+
+	/**
+	 * Represents how expressions are compiled by the created shells.
+	 */
+	private final RhinoCompilationPolicy compilationPolicy;
+
+	/**
+	 * Represents the persistent class cache shared by the created shells.
+	 */
+	private final RhinoClassCache classCache;
+
+	/**
+	 * Creates a new factory whose shells compile expressions as described by
+	 * the given policy, and share the given class cache.
+	 *
+	 * @param compilationPolicy the policy describing how the created shells
+	 * compile expressions
+	 * @param classCache the cache used to persist classes generated for
+	 * expressions compiled to bytecode, or {@code null} to always generate them
+	 */
+	public RhinoEvaluationShellFactory(
+			RhinoCompilationPolicy compilationPolicy,
+			RhinoClassCache classCache) {
+		this.compilationPolicy = compilationPolicy;
+		this.classCache = classCache;
+	}
+
+	/**
+	 * Creates a new factory whose shells compile expressions as described by
+	 * the given policy.
+	 *
+	 * @param compilationPolicy the policy describing how the created shells
+	 * compile expressions
+	 */
+	public RhinoEvaluationShellFactory(
+			RhinoCompilationPolicy compilationPolicy) {
+		this(compilationPolicy, null);
+	}
+
+	/**
+	 * Creates a new factory whose shells run every expression in the
+	 * interpreter.
+	 */
+	public RhinoEvaluationShellFactory() {
+		this(RhinoCompilationPolicy.interpreted());
+	}
+
 	/**
 	 * Creates a new {@link RhinoEvaluationShell} with the given variables
 	 * available to expressions evaluated with the resulting shell.
+	 * <p>
+	 * The variables are converted into native Javascript values once, when
+	 * the shell is created.
 	 *
 	 * @param variables the variables that should be available to expression
 	 * evaluated by this shell
@@ -23,15 +102,26 @@ public class RhinoEvaluationShellFactory implements EvaluationShellFactory {
 	 */
 	@Override
 	public RhinoEvaluationShell createShell(Map<String, Object> variables) {
-		Context cx = Context.enter();
+		ScriptableObject root = StandardRoot.INSTANCE;
+
+		try (Context cx = RhinoContextFactory.INSTANCE.enterContext()) {
+			ScriptableObject scope = (ScriptableObject) cx.newObject(root);
+			scope.setPrototype(root);
+			scope.setParentScope(null);
 
-		ScriptableObject scope = cx.initSafeStandardObjects(null, true);
-		variables.forEach((key, value) -> ScriptableObject
-				.putConstProperty(scope, key, value));
+			Map<String, Object> converted = new HashMap<>();
+			variables.forEach((key, value) -> {
+				Object jsValue = RhinoValueConverter.toJs(cx, root, value);
+				ScriptableObject.putConstProperty(scope, key, jsValue);
+				converted.put(key, jsValue);
+			});
 
-		scope.sealObject();
-		cx.close();
-		return new RhinoEvaluationShell(scope);
+			scope.sealObject();
+			RhinoEvaluationShell shell = new RhinoEvaluationShell(scope,
+					new ScriptCache(), this.compilationPolicy, this.classCache);
+			shell.setVariables(converted);
+			return shell;
+		}
 	}
 
 }
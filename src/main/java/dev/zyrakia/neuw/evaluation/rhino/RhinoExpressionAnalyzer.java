@@ -0,0 +1,250 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.ArrayLiteral;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ConditionalExpression;
+import org.mozilla.javascript.ast.ElementGet;
+import org.mozilla.javascript.ast.EmptyExpression;
+import org.mozilla.javascript.ast.ExpressionStatement;
+import org.mozilla.javascript.ast.FunctionCall;
+import org.mozilla.javascript.ast.InfixExpression;
+import org.mozilla.javascript.ast.KeywordLiteral;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NewExpression;
+import org.mozilla.javascript.ast.NumberLiteral;
+import org.mozilla.javascript.ast.ObjectLiteral;
+import org.mozilla.javascript.ast.ObjectProperty;
+import org.mozilla.javascript.ast.ParenthesizedExpression;
+import org.mozilla.javascript.ast.PropertyGet;
+import org.mozilla.javascript.ast.RegExpLiteral;
+import org.mozilla.javascript.ast.StringLiteral;
+import org.mozilla.javascript.ast.TemplateCharacters;
+import org.mozilla.javascript.ast.TemplateLiteral;
+import org.mozilla.javascript.ast.UnaryExpression;
+import org.mozilla.javascript.ast.WithStatement;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Statically analyzes Javascript expressions by walking their syntax tree.
+ * <p>
+ * An expression is considered pure if its result only depends on the
+ * variables it reads. Since variables are sealed, a pure expression always
+ * produces the same result within the same shell. The analysis only allows
+ * what is known to be pure: literals, names, property reads, operators over
+ * those, and calls of well-known side-effect free methods such as
+ * {@code toUpperCase} or {@code Math.max}. Anything else, such as other
+ * calls, functions, assignments, {@code with} or destructuring, makes the
+ * expression impure, as does any use of a non-deterministic or indirect name
+ * such as {@code Date}, {@code Math.random}, {@code this}, {@code eval} or a
+ * {@code constructor} property.
+ * <p>
+ * The names an expression references are recorded as well, so that it is known
+ * which variables the expression reads. The references include every free
+ * name, so they may contain names that are not variables, but never miss a
+ * variable unless the expression reaches the scope indirectly, in which case
+ * the references are unknown.
+ */
+public class RhinoExpressionAnalyzer {
+
+	/**
+	 * The names whose use makes an expression impure.
+	 */
+	private static final Set<String> IMPURE_NAMES = Set
+			.of("Date", "eval", "Function", "globalThis");
+
+	/**
+	 * The properties whose access makes an expression impure.
+	 */
+	private static final Set<String> IMPURE_PROPERTIES = Set
+			.of("random", "now", "constructor", "__proto__");
+
+	/**
+	 * The methods that can be called without making an expression impure,
+	 * since none of the built-in methods by these names have side effects or
+	 * depend on anything but their receiver and arguments.
+	 */
+	private static final Set<String> PURE_METHODS = Set.of("toUpperCase",
+			"toLowerCase", "trim", "substring", "substr", "slice", "replace",
+			"split", "join", "indexOf", "lastIndexOf", "includes",
+			"startsWith", "endsWith", "charAt", "charCodeAt", "padStart",
+			"padEnd", "repeat", "concat", "toString", "toFixed", "abs", "ceil",
+			"floor", "round", "trunc", "sign", "min", "max", "pow", "sqrt");
+
+	/**
+	 * The names whose use allows an expression to read variables without
+	 * referencing them by name.
+	 */
+	private static final Set<String> INDIRECT_NAMES = Set
+			.of("eval", "Function", "globalThis");
+
+	/**
+	 * The result of analyzing an expression.
+	 *
+	 * @param pure whether the result of the expression only depends on the
+	 * variables it reads
+	 * @param references the names referenced by the expression, or
+	 * {@code null} if they are unknown
+	 */
+	public record Analysis(boolean pure, Set<String> references) {
+
+		/**
+		 * The analysis of an expression that could not be analyzed, which is
+		 * never pure and has unknown references.
+		 */
+		public static final Analysis UNKNOWN = new Analysis(false, null);
+
+	}
+
+	/**
+	 * Analyzes the given expression.
+	 *
+	 * @param cx the context whose settings the expression is parsed with
+	 * @param expression the expression to analyze
+	 * @return the analysis, or {@link Analysis#UNKNOWN} if the expression
+	 * cannot be parsed
+	 */
+	public static Analysis analyze(Context cx, String expression) {
+		CompilerEnvirons environment = new CompilerEnvirons();
+		environment.initFromContext(cx);
+		environment.setRecordingComments(false);
+		environment.setIdeMode(false);
+
+		AstRoot root;
+		try {
+			root = new Parser(environment).parse(expression, "<analysis>", 0);
+		} catch (RhinoException e) {
+			return Analysis.UNKNOWN;
+		}
+
+		boolean[] pure = { true };
+		boolean[] bounded = { true };
+		Set<String> references = new HashSet<>();
+		root.visit((node) -> {
+			if (RhinoExpressionAnalyzer.isImpure(node)) pure[0] = false;
+			if (RhinoExpressionAnalyzer.isIndirect(node)) bounded[0] = false;
+			if (node instanceof Name name
+					&& !RhinoExpressionAnalyzer.isPropertyName(name))
+				references.add(name.getIdentifier());
+
+			return bounded[0];
+		});
+
+		return new Analysis(pure[0], bounded[0] ? Collections
+				.unmodifiableSet(references) : null);
+	}
+
+	/**
+	 * Returns whether the given node allows an expression to read variables
+	 * without referencing them by name.
+	 *
+	 * @param node the node to check
+	 * @return true if the node reads variables indirectly, false otherwise
+	 */
+	private static boolean isIndirect(AstNode node) {
+		if (node instanceof Name) {
+			return INDIRECT_NAMES.contains(((Name) node).getIdentifier());
+		} else if (node instanceof KeywordLiteral) {
+			return node.getType() == Token.THIS;
+		}
+
+		return node instanceof WithStatement;
+	}
+
+	/**
+	 * Returns whether the given name is the name of a property, rather than a
+	 * reference to a variable.
+	 *
+	 * @param name the name to check
+	 * @return true if the name is a property name, false otherwise
+	 */
+	private static boolean isPropertyName(Name name) {
+		AstNode parent = name.getParent();
+		if (parent instanceof PropertyGet) {
+			return ((PropertyGet) parent).getProperty() == name;
+		} else if (parent instanceof ObjectProperty) {
+			return ((ObjectProperty) parent).getLeft() == name;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns whether the given node on its own makes an expression impure.
+	 *
+	 * @param node the node to check
+	 * @return true if the node is impure, false otherwise
+	 */
+	private static boolean isImpure(AstNode node) {
+		if (!RhinoExpressionAnalyzer.isAllowed(node)) return true;
+
+		if (node instanceof Name) {
+			return IMPURE_NAMES.contains(((Name) node).getIdentifier());
+		} else if (node instanceof KeywordLiteral) {
+			return node.getType() == Token.THIS;
+		} else if (node instanceof PropertyGet) {
+			return IMPURE_PROPERTIES.contains(((PropertyGet) node).getProperty()
+					.getIdentifier());
+		} else if (node instanceof ElementGet) {
+			AstNode element = ((ElementGet) node).getElement();
+			if (element instanceof NumberLiteral) return false;
+			if (element instanceof StringLiteral) return IMPURE_PROPERTIES
+					.contains(((StringLiteral) element).getValue());
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns whether the given node is of a kind that can appear in a pure
+	 * expression. The node may still be impure for what it refers to.
+	 *
+	 * @param node the node to check
+	 * @return true if the node is allowed, false otherwise
+	 */
+	private static boolean isAllowed(AstNode node) {
+		if (node instanceof AstRoot || node instanceof ExpressionStatement
+				|| node instanceof EmptyExpression || node instanceof Name
+				|| node instanceof NumberLiteral
+				|| node instanceof StringLiteral
+				|| node instanceof RegExpLiteral
+				|| node instanceof TemplateLiteral
+				|| node instanceof TemplateCharacters
+				|| node instanceof ParenthesizedExpression
+				|| node instanceof ConditionalExpression
+				|| node instanceof PropertyGet || node instanceof ElementGet
+				|| node instanceof ObjectProperty) {
+			return true;
+		} else if (node instanceof KeywordLiteral) {
+			return node.getType() == Token.NULL || node.getType() == Token.TRUE
+					|| node.getType() == Token.FALSE;
+		} else if (node instanceof ArrayLiteral) {
+			return !((ArrayLiteral) node).isDestructuring();
+		} else if (node instanceof ObjectLiteral) {
+			return !((ObjectLiteral) node).isDestructuring();
+		} else if (node instanceof UnaryExpression) {
+			int type = node.getType();
+			return type != Token.DELPROP && type != Token.INC
+					&& type != Token.DEC;
+		} else if (node instanceof FunctionCall) {
+			if (node instanceof NewExpression) return false;
+
+			AstNode target = ((FunctionCall) node).getTarget();
+			return target instanceof PropertyGet && PURE_METHODS.contains(
+					((PropertyGet) target).getProperty().getIdentifier());
+		}
+
+		return node.getClass() == InfixExpression.class;
+	}
+
+}
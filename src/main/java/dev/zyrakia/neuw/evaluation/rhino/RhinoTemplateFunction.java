@@ -0,0 +1,104 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ExpressionStatement;
+
+import dev.zyrakia.neuw.evaluation.CompiledTemplate;
+
+/**
+ * Generates the Javascript source of a script that evaluates every expression
+ * of an entire {@link CompiledTemplate} at once.
+ * <p>
+ * The generated script evaluates to an array holding the result of every
+ * expression segment in order. The results are left unconverted, so that the
+ * template renders them exactly like results of expressions that are
+ * evaluated one by one, and the literal segments never pass through
+ * Javascript.
+ * <p>
+ * Since every expression becomes an element of a larger expression, each one
+ * must be a single standalone expression. Templates with expressions that are
+ * only valid as statements, or that would not stay within their own element,
+ * cannot be compiled this way.
+ */
+public class RhinoTemplateFunction {
+
+	/**
+	 * Prevents instantiation of this utility class.
+	 */
+	private RhinoTemplateFunction() {}
+
+	/**
+	 * Generates the source of a script that evaluates to an array of the
+	 * results of every expression of the given template.
+	 *
+	 * @param cx the context whose settings the expressions are parsed with
+	 * @param template the template to generate the source of
+	 * @return the generated source, or {@code null} if any expression is not
+	 * a single standalone expression
+	 */
+	public static String generate(Context cx, CompiledTemplate template) {
+		StringBuilder source = new StringBuilder("[");
+
+		for (CompiledTemplate.Segment segment : template.segments()) {
+			if (!(segment instanceof CompiledTemplate.Expression expr))
+				continue;
+
+			String expression = expr.expression().expression();
+			if (!RhinoTemplateFunction.isExpression(cx, expression))
+				return null;
+
+			if (source.length() > 1) source.append(',');
+			source.append("\n(").append(expression).append("\n)");
+		}
+
+		return source.append("\n]").toString();
+	}
+
+	/**
+	 * Returns whether the given text is a single expression on its own, and
+	 * stays a single expression when it is wrapped in parentheses, so that it
+	 * cannot close the element it is placed in.
+	 *
+	 * @param cx the context whose settings the text is parsed with
+	 * @param text the text to check
+	 * @return true if the text is a single standalone expression, false
+	 * otherwise
+	 */
+	static boolean isExpression(Context cx, String text) {
+		return RhinoTemplateFunction.isSingleExpression(cx, text)
+				&& RhinoTemplateFunction.isSingleExpression(cx, "(" + text
+						+ "\n)");
+	}
+
+	/**
+	 * Returns whether the given source parses into exactly one expression
+	 * statement.
+	 *
+	 * @param cx the context whose settings the source is parsed with
+	 * @param source the source to parse
+	 * @return true if the source is a single expression statement, false
+	 * otherwise
+	 */
+	private static boolean isSingleExpression(Context cx, String source) {
+		CompilerEnvirons environment = new CompilerEnvirons();
+		environment.initFromContext(cx);
+		environment.setRecordingComments(false);
+		environment.setIdeMode(false);
+
+		AstRoot root;
+		try {
+			root = new Parser(environment).parse(source, "<template>", 0);
+		} catch (RhinoException e) {
+			return false;
+		}
+
+		AstNode first = (AstNode) root.getFirstChild();
+		return first instanceof ExpressionStatement && first.getNext() == null;
+	}
+
+}
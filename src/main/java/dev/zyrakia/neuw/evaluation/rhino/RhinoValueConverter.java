@@ -0,0 +1,101 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Converts Java values into native Javascript values, so that scripts can use
+ * them without Rhino having to wrap and coerce them on every access.
+ * <p>
+ * Strings, booleans and numbers are kept as Javascript primitives, other
+ * character sequences, characters and enums become strings, maps become
+ * objects and collections and arrays become arrays, converting their contents
+ * recursively. Converted objects and arrays are sealed, so that expressions
+ * cannot modify the variables they were given. Any other value is wrapped
+ * once, as Rhino would do on access.
+ */
+public class RhinoValueConverter {
+
+	/**
+	 * Converts the given value into a native Javascript value.
+	 *
+	 * @param cx the context to convert with
+	 * @param scope the scope that created objects and arrays belong to
+	 * @param value the value to convert
+	 * @return the converted value
+	 */
+	public static Object toJs(Context cx, Scriptable scope, Object value) {
+		if (value == null || value instanceof String
+				|| value instanceof Boolean || value instanceof Number
+				|| value instanceof Scriptable)
+			return value;
+
+		if (value instanceof CharSequence || value instanceof Character
+				|| value instanceof Enum<?>) {
+			return value.toString();
+		} else if (value instanceof Map<?, ?>) {
+			return RhinoValueConverter.toObject(cx, scope, (Map<?, ?>) value);
+		} else if (value instanceof Collection<?>) {
+			return RhinoValueConverter.toArray(cx, scope,
+					((Collection<?>) value).toArray());
+		} else if (value.getClass().isArray()) {
+			Object[] elements = new Object[Array.getLength(value)];
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = Array.get(value, i);
+			}
+
+			return RhinoValueConverter.toArray(cx, scope, elements);
+		}
+
+		return Context.javaToJS(value, scope);
+	}
+
+	/**
+	 * Converts the given map into a sealed Javascript object, with its keys as
+	 * property names.
+	 *
+	 * @param cx the context to convert with
+	 * @param scope the scope that the object belongs to
+	 * @param map the map to convert
+	 * @return the converted object
+	 */
+	private static Scriptable toObject(Context cx, Scriptable scope,
+			Map<?, ?> map) {
+		ScriptableObject object = (ScriptableObject) cx.newObject(scope);
+
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			Object value = RhinoValueConverter.toJs(cx, scope, entry
+					.getValue());
+			object.put(String.valueOf(entry.getKey()), object, value);
+		}
+
+		object.sealObject();
+		return object;
+	}
+
+	/**
+	 * Converts the given elements into a sealed Javascript array.
+	 *
+	 * @param cx the context to convert with
+	 * @param scope the scope that the array belongs to
+	 * @param elements the elements to convert
+	 * @return the converted array
+	 */
+	private static Scriptable toArray(Context cx, Scriptable scope,
+			Object[] elements) {
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = RhinoValueConverter.toJs(cx, scope, elements[i]);
+		}
+
+		ScriptableObject array = (ScriptableObject) cx
+				.newArray(scope, elements);
+		array.sealObject();
+		return array;
+	}
+
+}
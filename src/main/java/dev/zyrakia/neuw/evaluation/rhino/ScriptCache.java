@@ -0,0 +1,202 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of compiled Rhino scripts, keyed by the text of the
+ * expression they were compiled from.
+ * <p>
+ * Cached scripts are held as {@link RhinoCompiledExpression}s, so executions
+ * of the same expression are counted together, regardless of where the
+ * expression appears.
+ * <p>
+ * Once the cache reaches its capacity, the least recently used script is
+ * evicted to make room for the next one. Hits, misses and evictions are
+ * counted so the effectiveness of the cache can be inspected.
+ * <p>
+ * Scripts are compiled outside of the lock guarding the cache, so a slow
+ * compilation never blocks lookups of other expressions, nor pins the carrier
+ * of a virtual thread. Threads that miss the same expression at once may each
+ * compile it, but only the first compiled script is cached and returned.
+ */
+public class ScriptCache {
+
+	/**
+	 * The capacity used when none is specified.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The maximum amount of scripts this cache will hold.
+	 */
+	private final int capacity;
+
+	/**
+	 * The lock guarding the cached scripts and the counters.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * The cached scripts, in access order.
+	 */
+	private final LinkedHashMap<String, RhinoCompiledExpression> scripts;
+
+	/**
+	 * The amount of lookups that found a cached script.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The amount of lookups that had to compile a script.
+	 */
+	private long misses = 0;
+
+	/**
+	 * The amount of scripts that were evicted to make room for others.
+	 */
+	private long evictions = 0;
+
+	/**
+	 * Creates a new cache that holds at most the given amount of scripts.
+	 *
+	 * @param capacity the maximum amount of scripts to hold
+	 * @throws IllegalArgumentException if the capacity is not positive
+	 */
+	public ScriptCache(int capacity) throws IllegalArgumentException {
+		if (capacity <= 0) throw new IllegalArgumentException(
+				"The capacity of a script cache must be positive.");
+
+		this.capacity = capacity;
+		this.scripts = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, RhinoCompiledExpression> eldest) {
+				if (this.size() <= ScriptCache.this.capacity) return false;
+
+				ScriptCache.this.evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Creates a new cache with the {@link #DEFAULT_CAPACITY}.
+	 */
+	public ScriptCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Returns the script cached for the given expression, compiling and
+	 * caching it with the given compiler if it is not present.
+	 *
+	 * @param expression the expression to get the script for
+	 * @param compiler the compiler used to compile the expression on a miss
+	 * @return the compiled script
+	 */
+	public RhinoCompiledExpression get(String expression,
+			Function<String, RhinoCompiledExpression> compiler) {
+		this.lock.lock();
+		try {
+			RhinoCompiledExpression script = this.scripts.get(expression);
+			if (script != null) {
+				this.hits++;
+				return script;
+			}
+
+			this.misses++;
+		} finally {
+			this.lock.unlock();
+		}
+
+		RhinoCompiledExpression compiled = compiler.apply(expression);
+
+		this.lock.lock();
+		try {
+			RhinoCompiledExpression script = this.scripts
+					.putIfAbsent(expression, compiled);
+			return script == null ? compiled : script;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all cached scripts. The counters are not reset.
+	 */
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.scripts.clear();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the amount of scripts currently cached.
+	 *
+	 * @return the size of this cache
+	 */
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.scripts.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum amount of scripts this cache will hold.
+	 *
+	 * @return the capacity of this cache
+	 */
+	public int capacity() { return this.capacity; }
+
+	/**
+	 * Returns the amount of lookups that found a cached script.
+	 *
+	 * @return the hit count
+	 */
+	public long hits() {
+		this.lock.lock();
+		try {
+			return this.hits;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the amount of lookups that had to compile a script.
+	 *
+	 * @return the miss count
+	 */
+	public long misses() {
+		this.lock.lock();
+		try {
+			return this.misses;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the amount of scripts that were evicted to make room for others.
+	 *
+	 * @return the eviction count
+	 */
+	public long evictions() {
+		this.lock.lock();
+		try {
+			return this.evictions;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package dev.zyrakia.neuw.exception;
+
+/**
+ * This exception is thrown when the evaluation of an expression exceeds one of
+ * the limits imposed on it, such as an instruction budget or a deadline.
+ */
+public class EvaluationLimitException extends RuntimeException {
+
+	/**
+	 * Represents the version of the serialized form of this exception.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Represents a kind of limit that an evaluation can exceed.
+	 */
+	public enum Limit {
+
+		/**
+		 * The amount of instructions a single expression may execute.
+		 */
+		EXPRESSION_INSTRUCTIONS("instruction budget of its expression"),
+
+		/**
+		 * The amount of instructions all expressions of a single content may
+		 * execute together.
+		 */
+		CONTENT_INSTRUCTIONS("instruction budget of its content"),
+
+		/**
+		 * The wall-clock time an evaluation may take.
+		 */
+		TIMEOUT("timeout");
+
+		/**
+		 * Represents the description of the limit used in messages.
+		 */
+		private final String description;
+
+		/**
+		 * Creates a new limit with the given description.
+		 *
+		 * @param description the description used in messages
+		 */
+		Limit(String description) {
+			this.description = description;
+		}
+
+	}
+
+	/**
+	 * Represents the limit that was exceeded.
+	 */
+	private final Limit limit;
+
+	/**
+	 * Represents the source of the expression that exceeded the limit.
+	 */
+	private final String source;
+
+	/**
+	 * Represents the expression that exceeded the limit.
+	 */
+	private final String expression;
+
+	/**
+	 * Creates a new exception with the given limit, source and expression.
+	 *
+	 * @param limit the limit that was exceeded
+	 * @param source the source of the expression
+	 * @param expression the expression that exceeded the limit
+	 */
+	public EvaluationLimitException(Limit limit, String source,
+			String expression) {
+		super("The expression \"" + expression + "\" in \"" + source
+				+ "\" exceeded the " + limit.description + ".");
+
+		this.limit = limit;
+		this.source = source;
+		this.expression = expression;
+	}
+
+	/**
+	 * Returns the limit that was exceeded.
+	 *
+	 * @return the limit
+	 */
+	public Limit getLimit() { return this.limit; }
+
+	/**
+	 * Returns the source of the expression that exceeded the limit.
+	 *
+	 * @return the source
+	 */
+	public String getSource() { return this.source; }
+
+	/**
+	 * Returns the expression that exceeded the limit.
+	 *
+	 * @return the expression
+	 */
+	public String getExpression() { return this.expression; }
+
+}
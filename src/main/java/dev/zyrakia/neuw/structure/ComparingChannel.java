@@ -0,0 +1,168 @@
+package dev.zyrakia.neuw.structure;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Represents a channel that compares the bytes written to it with the content
+ * of an existing file as they are written, so that rewriting a file with the
+ * same content neither holds the content in memory nor touches the file.
+ * <p>
+ * As soon as a written byte differs from the file, the identical prefix is
+ * copied from the file into a sibling, and every byte from the first
+ * differing one onwards is written there instead. The sibling only replaces
+ * the file once the content is committed, so the file is never left partially
+ * written.
+ */
+final class ComparingChannel implements WritableByteChannel {
+
+    /**
+     * The size of the chunks that the existing file is read in.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The path of the existing file.
+     */
+    private final Path path;
+
+    /**
+     * The channel reading the existing file.
+     */
+    private final FileChannel existing;
+
+    /**
+     * The buffer the existing file is read into.
+     */
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+    /**
+     * The amount of bytes written so far.
+     */
+    private long position = 0;
+
+    /**
+     * The sibling the content is written into once it differs, or null if it
+     * has not differed yet.
+     */
+    private Path sibling = null;
+
+    /**
+     * The channel writing the sibling, or null if the content has not
+     * differed yet.
+     */
+    private FileChannel out = null;
+
+    /**
+     * Whether this channel is open.
+     */
+    private boolean open = true;
+
+    /**
+     * Creates a new channel that compares against the given existing file.
+     *
+     * @param path the path of the existing file
+     * @throws IOException if the file cannot be opened
+     */
+    ComparingChannel(Path path) throws IOException {
+        this.path = path;
+        this.existing = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+
+        while (this.out == null && src.hasRemaining()) {
+            this.chunk.clear().limit(Math.min(CHUNK_SIZE, src.remaining()));
+            int read = this.existing.read(this.chunk, this.position);
+            if (read <= 0) {
+                this.diverge();
+                break;
+            }
+
+            this.chunk.flip();
+            ByteBuffer expected = src.slice().limit(read);
+            int mismatch = this.chunk.mismatch(expected);
+            int same = mismatch == -1 ? read : mismatch;
+
+            src.position(src.position() + same);
+            this.position += same;
+            if (mismatch != -1) this.diverge();
+        }
+
+        while (src.hasRemaining()) {
+            this.out.write(src);
+        }
+
+        return length;
+    }
+
+    /**
+     * Starts writing into the sibling, copying the identical prefix of the
+     * existing file into it first.
+     *
+     * @throws IOException if the sibling cannot be created or written
+     */
+    private void diverge() throws IOException {
+        this.sibling = Structure.createSibling(this.path);
+        this.out = FileChannel.open(this.sibling, StandardOpenOption.WRITE);
+
+        long copied = 0;
+        while (copied < this.position) {
+            copied += this.existing.transferTo(copied, this.position - copied,
+                    this.out);
+        }
+    }
+
+    /**
+     * Finishes the content, replacing the existing file with it if it
+     * differs, and closes this channel.
+     *
+     * @return true if the file was replaced, false if it already had the
+     * exact same content
+     * @throws IOException if the file cannot be replaced
+     */
+    boolean commit() throws IOException {
+        try {
+            if (this.out == null) {
+                if (this.existing.size() == this.position) return false;
+                this.diverge();
+            }
+
+            this.out.close();
+            Structure.replace(this.sibling, this.path);
+            return true;
+        } finally {
+            this.close();
+        }
+    }
+
+    @Override
+    public boolean isOpen() { return this.open; }
+
+    /**
+     * Closes this channel, discarding the sibling unless it replaced the
+     * existing file.
+     *
+     * @throws IOException if a channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.open) return;
+        this.open = false;
+
+        try {
+            this.existing.close();
+            if (this.out != null) this.out.close();
+        } finally {
+            if (this.sibling != null) Files.deleteIfExists(this.sibling);
+        }
+    }
+
+}
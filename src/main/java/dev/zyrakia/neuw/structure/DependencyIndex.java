@@ -0,0 +1,142 @@
+package dev.zyrakia.neuw.structure;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents which variables each item of a structure depends on, and in
+ * reverse, which items depend on each variable.
+ * <p>
+ * An item depends on the variables read by its name and the names of its
+ * ancestors, since they decide where it is written, and on the variables read
+ * by its content if it is a file. Items whose dependencies are unknown are
+ * affected by any change.
+ *
+ * @see Structure#index(dev.zyrakia.neuw.structure.content.ContentProvider,
+ * dev.zyrakia.neuw.evaluation.ContentEvaluator)
+ */
+public class DependencyIndex {
+
+    /**
+     * The names each indexed item references, or null if they are unknown.
+     */
+    private final Map<StructureItem, Set<String>> references = new HashMap<>();
+
+    /**
+     * The current absolute path of each indexed item, as of the last index or
+     * rewrite, for items whose name was not empty.
+     */
+    private final Map<StructureItem, Path> paths = new HashMap<>();
+
+    /**
+     * The items that reference each name.
+     */
+    private final Map<String, Set<StructureItem>> dependents = new HashMap<>();
+
+    /**
+     * The items whose references are unknown.
+     */
+    private final Set<StructureItem> unbounded = new LinkedHashSet<>();
+
+    /**
+     * Records the given item as referencing the given names.
+     *
+     * @param item the item to record
+     * @param references the names the item references, or null if they are
+     * unknown
+     * @param path the absolute path of the item, or null if its name was
+     * empty
+     */
+    void add(StructureItem item, Set<String> references, Path path) {
+        this.references.put(item, references);
+        if (path != null) this.paths.put(item, path);
+
+        if (references == null) {
+            this.unbounded.add(item);
+            return;
+        }
+
+        for (String reference : references) {
+            this.dependents.computeIfAbsent(reference, (r) -> new HashSet<>())
+                    .add(item);
+        }
+    }
+
+    /**
+     * Records the given path as the current path of the given item, after it
+     * was written again at that path.
+     *
+     * @param item the item that was written
+     * @param path the absolute path of the item, or null if its name is now
+     * empty
+     */
+    void relocate(StructureItem item, Path path) {
+        if (path == null) this.paths.remove(item);
+        else this.paths.put(item, path);
+    }
+
+    /**
+     * Returns the names the given item references.
+     *
+     * @param item the item to get the references of
+     * @return the referenced names, or null if they are unknown or the item is
+     * not indexed
+     */
+    public Set<String> referencesOf(StructureItem item) {
+        Set<String> references = this.references.get(item);
+        return references == null ? null
+                : Collections.unmodifiableSet(references);
+    }
+
+    /**
+     * Returns the absolute path of the given item as of the last index or
+     * rewrite. The path is still current as long as the item is not affected
+     * by a change, since it is only decided by the names the item references.
+     *
+     * @param item the item to get the path of
+     * @return the indexed path, or null if the name of the item was empty or
+     * the item is not indexed
+     */
+    public Path pathOf(StructureItem item) {
+        return this.paths.get(item);
+    }
+
+    /**
+     * Returns the indexed items that reference the given name, not including
+     * items whose references are unknown.
+     *
+     * @param identifier the name to get the dependents of
+     * @return the dependent items
+     */
+    public Set<StructureItem> dependentsOf(String identifier) {
+        return Collections.unmodifiableSet(this.dependents
+                .getOrDefault(identifier, Set.of()));
+    }
+
+    /**
+     * Returns whether the given item is affected by a change to any of the
+     * given variables. Items that are not indexed are always affected.
+     *
+     * @param item the item to check
+     * @param changed the identifiers of the changed variables
+     * @return true if the item needs to be written again, false otherwise
+     */
+    public boolean isAffected(StructureItem item, Set<String> changed) {
+        if (!this.references.containsKey(item)) return true;
+
+        Set<String> references = this.references.get(item);
+        if (references == null) return true;
+
+        for (String identifier : changed) {
+            if (references.contains(identifier)) return true;
+        }
+
+        return false;
+    }
+
+}
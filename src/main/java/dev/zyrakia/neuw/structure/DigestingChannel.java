@@ -0,0 +1,78 @@
+package dev.zyrakia.neuw.structure;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Represents a channel that passes the bytes written to it on to another
+ * channel, while hashing and counting them, so that rendered content can be
+ * recorded in a {@link GenerationManifest} as it is streamed into a file.
+ */
+final class DigestingChannel implements WritableByteChannel {
+
+    /**
+     * The channel the bytes are passed on to.
+     */
+    private final WritableByteChannel out;
+
+    /**
+     * The digest of the bytes written so far.
+     */
+    private final MessageDigest digest = GenerationManifest.newDigest();
+
+    /**
+     * The amount of bytes written so far.
+     */
+    private long size = 0;
+
+    /**
+     * Creates a new channel that passes its bytes on to the given channel.
+     *
+     * @param out the channel to pass the bytes on to
+     */
+    DigestingChannel(WritableByteChannel out) {
+        this.out = out;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        ByteBuffer written = src.duplicate();
+
+        while (src.hasRemaining()) {
+            this.out.write(src);
+        }
+
+        this.digest.update(written);
+        this.size += length;
+        return length;
+    }
+
+    /**
+     * Returns the amount of bytes written so far.
+     *
+     * @return the size of the written content
+     */
+    long size() { return this.size; }
+
+    /**
+     * Completes the hash of the written content. This can only be done once.
+     *
+     * @return the hash of the written content
+     */
+    String hash() {
+        return HexFormat.of().formatHex(this.digest.digest());
+    }
+
+    @Override
+    public boolean isOpen() { return this.out.isOpen(); }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+}
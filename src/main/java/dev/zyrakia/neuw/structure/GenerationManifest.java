@@ -0,0 +1,484 @@
+package dev.zyrakia.neuw.structure;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the record of a previous generation of a structure, stored as a
+ * {@link #FILE_NAME} file in its root.
+ * <p>
+ * Each generated file is recorded with a hash of its inputs, meaning its
+ * path, its template content and the variables it references, and a hash of
+ * the content that was written. When a structure is written again with a
+ * manifest, files whose inputs did not change are skipped without being read
+ * back, and files whose rendered content did not change are not rewritten. A
+ * file is only trusted to still hold what was written if both its size and
+ * its modification time match the manifest. Templates with impure
+ * expressions are always rendered again, since their output can change even
+ * if their inputs do not.
+ * Files that were generated before but are no longer part of the structure
+ * are reported by {@link #removedPaths()}.
+ * <p>
+ * Assets, and files that are copied verbatim, are never decoded, so their
+ * inputs are the size and modification time of the file holding them, and no
+ * content hash is recorded for them.
+ * <p>
+ * The manifest file holds a line per file, with the hashes, size and
+ * modification time of the file and its relative path, separated by tabs.
+ * Backslashes, tabs and line breaks within paths are escaped with a
+ * backslash.
+ *
+ * @see Structure#write(dev.zyrakia.neuw.structure.content.ContentProvider,
+ * dev.zyrakia.neuw.evaluation.ContentEvaluator, GenerationManifest)
+ */
+public class GenerationManifest {
+
+    /**
+     * The name of the manifest file in the root of a structure.
+     */
+    public static final String FILE_NAME = ".neuw-manifest";
+
+    /**
+     * The first line of every manifest file.
+     */
+    private static final String HEADER = "# neuw generation manifest 2";
+
+    /**
+     * The size of the chunks that content is encoded in while it is hashed.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Represents the record of a single generated file.
+     *
+     * @param inputHash the hash of the inputs the file was generated from
+     * @param contentHash the hash of the content that was written
+     * @param size the size of the content that was written, in bytes
+     * @param lastModified the modification time of the file once it was
+     * written, in nanoseconds, or {@code -1} if it is unknown
+     */
+    public record Entry(String inputHash, String contentHash, long size,
+            long lastModified) {
+
+        /**
+         * Creates a new entry of a file whose modification time is unknown,
+         * which is never trusted to be intact.
+         *
+         * @param inputHash the hash of the inputs the file was generated from
+         * @param contentHash the hash of the content that was written
+         * @param size the size of the content that was written, in bytes
+         */
+        public Entry(String inputHash, String contentHash, long size) {
+            this(inputHash, contentHash, size, -1);
+        }
+
+    }
+
+    /**
+     * The path of the manifest file.
+     */
+    private final Path file;
+
+    /**
+     * The variables that files are generated with.
+     */
+    private final Map<String, Object> variables;
+
+    /**
+     * The entries of the previous generation, by relative path.
+     */
+    private final Map<String, Entry> previous;
+
+    /**
+     * The entries of the current generation, by relative path.
+     */
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new manifest.
+     *
+     * @param file the path of the manifest file
+     * @param variables the variables that files are generated with
+     * @param previous the entries of the previous generation
+     */
+    private GenerationManifest(Path file, Map<String, Object> variables,
+            Map<String, Entry> previous) {
+        this.file = file;
+        this.variables = variables;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the manifest of the structure at the given root, if there is one.
+     *
+     * @param root the root path of the structure
+     * @param variables the variables that files will be generated with
+     * @return the loaded manifest, which has no previous entries if the root
+     * does not contain a manifest, and no entries for malformed lines
+     * @throws IOException if the manifest exists but cannot be read
+     */
+    public static GenerationManifest load(Path root,
+            Map<String, Object> variables) throws IOException {
+        Path file = root.resolve(FILE_NAME);
+        Map<String, Entry> previous = new HashMap<>();
+
+        if (Files.isRegularFile(file)) {
+            List<String> lines = Files.readAllLines(file);
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER))
+                return new GenerationManifest(file, variables, previous);
+
+            for (String line : lines.subList(1, lines.size())) {
+                String[] parts = line.split("\t", 5);
+                if (parts.length != 5) continue;
+
+                try {
+                    previous.put(GenerationManifest.unescape(parts[4]),
+                            new Entry(parts[0], parts[1], Long.parseLong(
+                                    parts[2]), Long.parseLong(parts[3])));
+                } catch (NumberFormatException e) {
+                    // The file is treated as not generated before, so it is
+                    // rendered and written again.
+                }
+            }
+        }
+
+        return new GenerationManifest(file, variables, previous);
+    }
+
+    /**
+     * Returns the key that the file at the given relative path is recorded
+     * under, which is the same on every platform.
+     *
+     * @param relativePath the path relative to the root of the structure
+     * @return the key of the path
+     */
+    static String key(Path relativePath) {
+        return relativePath.toString().replace('\\', '/');
+    }
+
+    /**
+     * Returns the modification time of the given file, at the full resolution
+     * of the file system.
+     *
+     * @param file the file to inspect
+     * @return the modification time, in nanoseconds
+     * @throws IOException if the file cannot be inspected
+     */
+    static long lastModified(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns whether the given file still holds what was written according
+     * to the given entry, meaning its size and modification time are
+     * unchanged.
+     *
+     * @param file the file to inspect
+     * @param entry the entry of the file, or null if it was not generated
+     * before
+     * @return true if the file is intact, false otherwise
+     * @throws IOException if the file cannot be inspected
+     */
+    static boolean isIntact(Path file, Entry entry) throws IOException {
+        if (entry == null || entry.lastModified() < 0) return false;
+
+        BasicFileAttributes attributes = Files.readAttributes(file,
+                BasicFileAttributes.class);
+        return attributes.size() == entry.size() && attributes
+                .lastModifiedTime().to(TimeUnit.NANOSECONDS) == entry
+                        .lastModified();
+    }
+
+    /**
+     * Computes the hash of the inputs of a file.
+     *
+     * @param key the key of the file
+     * @param content the template content of the file
+     * @param references the names referenced by the content, or null if they
+     * are unknown, in which case all variables are part of the inputs
+     * @return the hash of the inputs
+     */
+    String inputHash(String key, CharSequence content,
+            Set<String> references) {
+        MessageDigest digest = GenerationManifest.newDigest();
+        digest.update(key.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        GenerationManifest.update(digest, content);
+        digest.update((byte) 0);
+
+        Set<String> names = new TreeSet<>(references == null
+                ? this.variables.keySet()
+                : references);
+        StringBuilder values = new StringBuilder();
+        for (String name : names) {
+            if (!this.variables.containsKey(name)) continue;
+
+            values.append(name).append('=');
+            GenerationManifest.appendCanonical(values, this.variables
+                    .get(name));
+            values.append('\0');
+        }
+
+        digest.update(values.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Feeds the UTF-8 encoding of the given content to the given digest, a
+     * chunk at a time, so that large content is never encoded as a whole.
+     * Malformed characters are replaced, just like {@link String#getBytes}
+     * would.
+     *
+     * @param digest the digest to update
+     * @param content the content to encode
+     */
+    private static void update(MessageDigest digest, CharSequence content) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(content);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        boolean flushed = false;
+        while (!flushed) {
+            CoderResult result = encoder.encode(chars, chunk, true);
+            if (result.isUnderflow()) flushed = encoder.flush(chunk)
+                    .isUnderflow();
+
+            digest.update(chunk.flip());
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Computes the hash of the inputs of an asset, which are its path and the
+     * size and modification time of the file holding it, so that the asset
+     * does not need to be read.
+     *
+     * @param key the key of the asset
+     * @param size the size of the file holding the asset
+     * @param lastModified the modification time of the file holding the
+     * asset, in nanoseconds
+     * @return the hash of the inputs
+     */
+    String assetHash(String key, long size, long lastModified) {
+        MessageDigest digest = GenerationManifest.newDigest();
+        digest.update((key + "\0asset\0" + size + "\0" + lastModified)
+                .getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the entry of the given file from the previous generation.
+     *
+     * @param key the key of the file
+     * @return the previous entry, or null if the file was not generated before
+     */
+    Entry previous(String key) {
+        return this.previous.get(key);
+    }
+
+    /**
+     * Records the given file as part of the current generation.
+     *
+     * @param key the key of the file
+     * @param entry the entry of the file
+     */
+    void record(String key, Entry entry) {
+        this.current.put(key, entry);
+    }
+
+    /**
+     * Returns the paths of the files that were generated previously, but were
+     * not generated in the current generation.
+     *
+     * @return the removed relative paths, sorted
+     */
+    public Set<String> removedPaths() {
+        Set<String> removed = new TreeSet<>(this.previous.keySet());
+        removed.removeAll(this.current.keySet());
+        return removed;
+    }
+
+    /**
+     * Saves the entries of the current generation as the manifest file,
+     * replacing the previous manifest.
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    public void save() throws IOException {
+        Path temp = Files.createTempFile(this.file.toAbsolutePath()
+                .getParent(), FILE_NAME, ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write(HEADER);
+            writer.newLine();
+
+            for (Map.Entry<String, Entry> entry : new TreeMap<>(this.current)
+                    .entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.inputHash() + "\t" + value.contentHash()
+                        + "\t" + value.size() + "\t" + value.lastModified()
+                        + "\t" + GenerationManifest.escape(entry.getKey()));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Escapes the backslashes, tabs and line breaks of the given key, so that
+     * it fits on a single field of a manifest line.
+     *
+     * @param key the key to escape
+     * @return the escaped key
+     */
+    private static String escape(String key) {
+        StringBuilder escaped = new StringBuilder(key.length());
+
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+
+        return escaped.toString();
+    }
+
+    /**
+     * Reverses the escaping of the given key.
+     *
+     * @param escaped the escaped key
+     * @return the original key
+     * @see #escape(String)
+     */
+    private static String unescape(String escaped) {
+        StringBuilder key = new StringBuilder(escaped.length());
+
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c != '\\' || i + 1 == escaped.length()) {
+                key.append(c);
+                continue;
+            }
+
+            switch (escaped.charAt(++i)) {
+                case 't' -> key.append('\t');
+                case 'n' -> key.append('\n');
+                case 'r' -> key.append('\r');
+                default -> key.append(escaped.charAt(i));
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Appends a representation of the given value that does not depend on the
+     * iteration order of maps. Every scalar is tagged with its type, and text
+     * is prefixed with its length, so that values of different types, such as
+     * the string {@code "1"} and the number {@code 1}, are never represented
+     * the same.
+     *
+     * @param builder the builder to append to
+     * @param value the value to append
+     */
+    private static void appendCanonical(StringBuilder builder, Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((k, v) -> sorted.put(String.valueOf(k), v));
+
+            builder.append('{');
+            sorted.forEach((k, v) -> {
+                GenerationManifest.appendText(builder, "s", k);
+                builder.append(':');
+                GenerationManifest.appendCanonical(builder, v);
+                builder.append(',');
+            });
+            builder.append('}');
+        } else if (value instanceof Collection<?> collection) {
+            builder.append('[');
+            for (Object element : collection) {
+                GenerationManifest.appendCanonical(builder, element);
+                builder.append(',');
+            }
+            builder.append(']');
+        } else if (value != null && value.getClass().isArray()) {
+            builder.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                GenerationManifest.appendCanonical(builder, Array
+                        .get(value, i));
+                builder.append(',');
+            }
+            builder.append(']');
+        } else if (value == null) builder.append("null");
+        else if (value instanceof CharSequence || value instanceof Character)
+            GenerationManifest.appendText(builder, "s", value.toString());
+        else if (value instanceof Number)
+            GenerationManifest.appendText(builder, "n", value.toString());
+        else if (value instanceof Boolean)
+            GenerationManifest.appendText(builder, "b", value.toString());
+        else GenerationManifest.appendText(builder, value.getClass()
+                .getName(), value.toString());
+    }
+
+    /**
+     * Appends the given text, prefixed with the given type tag and its
+     * length.
+     *
+     * @param builder the builder to append to
+     * @param tag the tag of the type of the value the text represents
+     * @param text the text to append
+     */
+    private static void appendText(StringBuilder builder, String tag,
+            String text) {
+        builder.append(tag).append(text.length()).append(':').append(text);
+    }
+
+    /**
+     * Creates a new digest for hashes within the manifest.
+     *
+     * @return the created digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+}
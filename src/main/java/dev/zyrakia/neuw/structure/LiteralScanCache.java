@@ -0,0 +1,93 @@
+package dev.zyrakia.neuw.structure;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dev.zyrakia.neuw.evaluation.ExpressionScanner;
+
+/**
+ * Represents the results of scanning source files for expressions, so that
+ * files without any expressions can be copied as is.
+ * <p>
+ * Each result is kept until the size or modification time of its file
+ * changes, or a different scanner is used, so a file is only scanned once
+ * across repeated writes of a structure. Modification times are compared at
+ * the full resolution of the file system, so a file that is changed twice
+ * within the same millisecond is still scanned again.
+ * <p>
+ * Files of at least {@link #MAPPING_THRESHOLD} bytes are memory-mapped to be
+ * scanned, smaller files are read into the heap, since mapping has a fixed
+ * cost that only pays off for large files.
+ */
+final class LiteralScanCache {
+
+    /**
+     * The size in bytes at which files are memory-mapped to be scanned.
+     */
+    static final long MAPPING_THRESHOLD = 64 * 1024;
+
+    /**
+     * Represents the result of scanning a file.
+     *
+     * @param size the size of the file when it was scanned
+     * @param lastModified the modification time of the file when it was
+     * scanned
+     * @param scanner the scanner the file was scanned with
+     * @param literal whether the file contains no expressions
+     */
+    private record Scan(long size, FileTime lastModified,
+            ExpressionScanner scanner, boolean literal) {}
+
+    /**
+     * The result of the last scan of each file.
+     */
+    private final Map<Path, Scan> scans = new ConcurrentHashMap<>();
+
+    /**
+     * Returns whether the given file contains no expressions according to the
+     * given scanner, scanning its bytes without decoding them if there is no
+     * up to date result for it.
+     *
+     * @param file the file to check
+     * @param scanner the scanner to search for expressions with
+     * @return true if the file can be copied as is, false otherwise
+     * @throws IOException if the file cannot be read
+     */
+    boolean isLiteral(Path file, ExpressionScanner scanner)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file,
+                BasicFileAttributes.class);
+        long size = attributes.size();
+        FileTime lastModified = attributes.lastModifiedTime();
+
+        Scan scan = this.scans.get(file);
+        if (scan != null && scan.size() == size
+                && scan.lastModified().equals(lastModified)
+                && scan.scanner() == scanner)
+            return scan.literal();
+
+        boolean literal;
+        if (size == 0) literal = true;
+        else if (size > Integer.MAX_VALUE) literal = false;
+        else if (size < MAPPING_THRESHOLD) literal = !scanner
+                .containsExpression(ByteBuffer.wrap(Files.readAllBytes(file)));
+        else {
+            try (FileChannel channel = FileChannel.open(file)) {
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, size);
+                literal = !scanner.containsExpression(bytes);
+            }
+        }
+
+        this.scans.put(file, new Scan(size, lastModified, scanner, literal));
+        return literal;
+    }
+
+}
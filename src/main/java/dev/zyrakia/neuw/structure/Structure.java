@@ -1,13 +1,33 @@
 package dev.zyrakia.neuw.structure;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 
+import dev.zyrakia.neuw.evaluation.CompiledTemplate;
 import dev.zyrakia.neuw.evaluation.ContentEvaluator;
 import dev.zyrakia.neuw.exception.UnmatchedPathException;
 import dev.zyrakia.neuw.structure.content.ContentProvider;
@@ -17,6 +37,114 @@ import dev.zyrakia.neuw.structure.content.ContentProvider;
  */
 public class Structure {
 
+    /**
+     * Represents the task of writing a list of sibling items and all of their
+     * descendants. Names are evaluated as the items are reached, and each file
+     * and subdirectory is forked as its own task as soon as its path is known.
+     */
+    private final class SubtreeTask extends RecursiveTask<List<WriteResult>> {
+
+        /**
+         * The version of the serialized form of this task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The absolute path the items are located in.
+         */
+        private final Path root;
+
+        /**
+         * The items to write.
+         */
+        private final List<StructureItem> items;
+
+        /**
+         * The result of writing the directory that contains the items, which
+         * precedes their results, or null if there is none.
+         */
+        private final WriteResult head;
+
+        /**
+         * The provider of the content for each item.
+         */
+        private final ContentProvider provider;
+
+        /**
+         * The evaluator to evaluate item names and content.
+         */
+        private final ContentEvaluator evaluator;
+
+        /**
+         * Creates a new task to write the given items.
+         * 
+         * @param root the absolute path the items are located in
+         * @param items the items to write
+         * @param head the result of writing the containing directory, or null
+         * @param provider the provider of the content for each item
+         * @param evaluator the evaluator to evaluate item names and content
+         */
+        private SubtreeTask(Path root, List<StructureItem> items,
+                WriteResult head, ContentProvider provider,
+                ContentEvaluator evaluator) {
+            this.root = root;
+            this.items = items;
+            this.head = head;
+            this.provider = provider;
+            this.evaluator = evaluator;
+        }
+
+        @Override
+        protected List<WriteResult> compute() {
+            List<ForkJoinTask<List<WriteResult>>> forked;
+            try {
+                forked = this.forkItems();
+            } finally {
+                this.evaluator.releaseThread();
+            }
+
+            List<WriteResult> results = new ArrayList<>();
+            if (this.head != null) results.add(this.head);
+            for (ForkJoinTask<List<WriteResult>> task : forked) {
+                results.addAll(task.join());
+            }
+
+            return results;
+        }
+
+        /**
+         * Evaluates the names of the items, creating directories right away
+         * and forking a task for each directory and file.
+         * 
+         * @return the forked tasks, in the order of the items
+         */
+        private List<ForkJoinTask<List<WriteResult>>> forkItems() {
+            List<ForkJoinTask<List<WriteResult>>> forked = new ArrayList<>(
+                    this.items.size());
+
+            for (StructureItem item : this.items) {
+                String name = this.evaluator.evaluate(item.getName(), item
+                        .getName());
+                if (name.isEmpty()) continue;
+
+                Path path = this.root.resolve(name);
+                if (item.isDirectory()) {
+                    WriteResult created = Structure.this.writeItem(item, path,
+                            this.provider, this.evaluator);
+                    forked.add(new SubtreeTask(path, item.getChildren(),
+                            created, this.provider, this.evaluator).fork());
+                } else {
+                    forked.add(ForkJoinTask.adapt(() -> List.of(Structure.this
+                            .writeItemReleasing(item, path, this.provider,
+                                    this.evaluator))).fork());
+                }
+            }
+
+            return forked;
+        }
+
+    }
+
     /**
      * The root path of the structure.
      */
@@ -27,6 +155,35 @@ public class Structure {
      */
     private List<StructureItem> rootItems;
 
+    /**
+     * Whether existing files are left untouched if their content is identical
+     * to the newly evaluated content.
+     */
+    private boolean skipUnchanged = false;
+
+    /**
+     * Whether assets are copied with {@link Files#copy(Path, Path,
+     * java.nio.file.CopyOption...)} instead of a channel transfer.
+     */
+    private boolean platformAssetCopy = false;
+
+    /**
+     * Whether files without any expressions are copied from their source
+     * instead of being evaluated.
+     */
+    private boolean verbatimCopy = false;
+
+    /**
+     * Whether file content is rendered from its UTF-8 encoding, without
+     * decoding its literal parts.
+     */
+    private boolean byteRendering = false;
+
+    /**
+     * The results of scanning source files for expressions.
+     */
+    private final LiteralScanCache literalScans = new LiteralScanCache();
+
     /**
      * Creates a new structure at the given root with the given item.
      * 
@@ -38,6 +195,111 @@ public class Structure {
         this.rootItems = rootItems;
     }
 
+    /**
+     * Sets whether existing files should be left untouched if their content is
+     * identical to the newly evaluated content, so that their modification
+     * time is preserved and nothing watching them is triggered.
+     * <p>
+     * The content of existing files is streamed as it is evaluated, and
+     * compared to the file chunk by chunk without being held in memory. From
+     * the first differing byte onwards, the content is written into a sibling
+     * that replaces the file once it is complete, so the file is only touched
+     * if its content actually differs.
+     * 
+     * @param skipUnchanged whether unchanged files should be skipped
+     * @see WriteResult#unchanged(StructureItem, Path)
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * Returns whether existing files are left untouched if their content is
+     * identical to the newly evaluated content.
+     * 
+     * @return true if unchanged files are skipped, false otherwise
+     */
+    public boolean isSkipUnchanged() { return this.skipUnchanged; }
+
+    /**
+     * Sets whether assets should be copied with
+     * {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}, which lets
+     * the platform pick its fastest copy mechanism, such as
+     * {@code copy_file_range} or reflinks on file systems that support them.
+     * Otherwise assets are copied with {@link FileChannel#transferTo}.
+     * <p>
+     * Either way, the content of assets is never read into the heap.
+     * 
+     * @param platformAssetCopy whether to copy assets with the platform copy
+     * @see ContentProvider#locateAsset(Path)
+     */
+    public void setPlatformAssetCopy(boolean platformAssetCopy) {
+        this.platformAssetCopy = platformAssetCopy;
+    }
+
+    /**
+     * Returns whether assets are copied with the platform copy mechanism.
+     * 
+     * @return true if the platform copy is used, false if assets are
+     * transferred through channels
+     */
+    public boolean isPlatformAssetCopy() { return this.platformAssetCopy; }
+
+    /**
+     * Sets whether files whose source contains no expressions should be
+     * copied byte for byte, the same way as assets, instead of being decoded,
+     * scanned and encoded again.
+     * <p>
+     * Sources are scanned for the open delimiter of the expression scanner
+     * without being decoded, and the result is cached until the source
+     * changes. This only applies to content that the provider locates in a
+     * file, and to scanners that can search encoded content.
+     * 
+     * @param verbatimCopy whether to copy expression-free files verbatim
+     * @see ContentProvider#locateSource(Path)
+     * @see dev.zyrakia.neuw.evaluation.ExpressionScanner#containsExpression(
+     * java.nio.ByteBuffer)
+     * @see WriteResult#copiedVerbatim(StructureItem, Path, boolean)
+     */
+    public void setVerbatimCopy(boolean verbatimCopy) {
+        this.verbatimCopy = verbatimCopy;
+    }
+
+    /**
+     * Returns whether files whose source contains no expressions are copied
+     * byte for byte.
+     * 
+     * @return true if expression-free files are copied verbatim, false
+     * otherwise
+     */
+    public boolean isVerbatimCopy() { return this.verbatimCopy; }
+
+    /**
+     * Sets whether file content should be rendered from its UTF-8 encoding.
+     * Delimiters are then located in the encoded content, literal parts are
+     * written to the file as slices of it, and only the results of
+     * expressions are encoded, instead of the entire content being decoded
+     * and encoded again.
+     * <p>
+     * This does not apply to files written with a
+     * {@link GenerationManifest}, since their content is hashed as text.
+     * 
+     * @param byteRendering whether to render content from its encoding
+     * @see ContentProvider#evaluateBytes(Path)
+     * @see ContentEvaluator#compile(ByteBuffer, String)
+     */
+    public void setByteRendering(boolean byteRendering) {
+        this.byteRendering = byteRendering;
+    }
+
+    /**
+     * Returns whether file content is rendered from its UTF-8 encoding.
+     * 
+     * @return true if content is rendered from its encoding, false if it is
+     * decoded first
+     */
+    public boolean isByteRendering() { return this.byteRendering; }
+
     /**
      * Maps the given items to their absolute paths based on the given root
      * path.
@@ -88,6 +350,370 @@ public class Structure {
         return results;
     }
 
+    /**
+     * Writes the structure at the root path, with content from the given
+     * provider, regenerating only the files whose inputs changed since the
+     * generation recorded by the given manifest.
+     * <p>
+     * Existing files whose inputs are unchanged, and whose size still matches
+     * the manifest, are skipped without being read. Other files are rendered
+     * into memory and only written if their content differs from the content
+     * recorded by the manifest. Every file is recorded in the manifest, which
+     * must be saved by the caller afterwards.
+     * 
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to evaluate item names and content
+     * @param manifest the manifest of the previous generation, which the
+     * current generation is recorded into
+     * @return the write results for each item of this structure
+     * @see GenerationManifest#load(Path, Map)
+     */
+    public List<WriteResult> write(ContentProvider provider,
+            ContentEvaluator evaluator, GenerationManifest manifest) {
+        Map<StructureItem, Path> absolutes = Structure
+                .mapToAbsolutes(this.root, this.rootItems, evaluator);
+        List<WriteResult> results = new ArrayList<>(absolutes.size());
+
+        for (Map.Entry<StructureItem, Path> entry : absolutes.entrySet()) {
+            WriteResult res = this.writeItem(entry.getKey(), entry
+                    .getValue(), provider, evaluator, manifest);
+            results.add(res);
+        }
+
+        return results;
+    }
+
+    /**
+     * Writes the structure at the root path, with content from the given
+     * provider, traversing independent subtrees in parallel on the given pool.
+     * <p>
+     * Unlike {@link #write(ContentProvider, ContentEvaluator)}, names are not
+     * all evaluated up front. Each directory is created as soon as its name is
+     * evaluated, after which its children are evaluated and written as a
+     * separate task, so writing starts immediately and deep trees spread
+     * across all workers of the pool. The evaluator and provider must
+     * therefore be safe to use from multiple threads.
+     * 
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to evaluate item names and content
+     * @param pool the pool to traverse the structure on
+     * @return the write results for each item of this structure, in the same
+     * order as {@link #write(ContentProvider, ContentEvaluator)}
+     */
+    public List<WriteResult> writeForkJoin(ContentProvider provider,
+            ContentEvaluator evaluator, ForkJoinPool pool) {
+        return pool.invoke(new SubtreeTask(this.root, this.rootItems, null,
+                provider, evaluator));
+    }
+
+    /**
+     * Writes the structure at the root path, with content from the given
+     * provider, traversing independent subtrees in parallel on a pool of its
+     * own with a worker per processor.
+     * <p>
+     * The common pool is not used, since writing blocks on file I/O and would
+     * starve everything else that runs on it. The pool is shut down once the
+     * structure has been written.
+     * 
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to evaluate item names and content
+     * @return the write results for each item of this structure
+     * @see #writeForkJoin(ContentProvider, ContentEvaluator, ForkJoinPool)
+     */
+    public List<WriteResult> writeForkJoin(ContentProvider provider,
+            ContentEvaluator evaluator) {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime()
+                .availableProcessors());
+        try {
+            return this.writeForkJoin(provider, evaluator, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes the structure at the root path, with content from the given
+     * provider, writing files concurrently.
+     * <p>
+     * Directories are created first, in structure order, so that every parent
+     * exists before anything is written into it. Files are then evaluated and
+     * written on virtual threads, with at most the given amount of files being
+     * written at once. The evaluator and provider must therefore be safe to
+     * use from multiple threads. If writing a file fails with an exception,
+     * such as an expression failing to evaluate, the first such exception in
+     * structure order is rethrown once every file has been written.
+     * 
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to evaluate item names and content
+     * @param maxConcurrency the maximum amount of files written at once
+     * @return the write results for each item of this structure, in the same
+     * order as {@link #write(ContentProvider, ContentEvaluator)}
+     * @throws IllegalArgumentException if the maximum concurrency is not
+     * positive
+     */
+    public List<WriteResult> writeParallel(ContentProvider provider,
+            ContentEvaluator evaluator, int maxConcurrency)
+            throws IllegalArgumentException {
+        if (maxConcurrency <= 0) throw new IllegalArgumentException(
+                "The maximum concurrency must be positive.");
+
+        Map<StructureItem, Path> absolutes = Structure
+                .mapToAbsolutes(this.root, this.rootItems, evaluator);
+        WriteResult[] results = new WriteResult[absolutes.size()];
+        Semaphore permits = new Semaphore(maxConcurrency);
+
+        int index = 0;
+        for (Map.Entry<StructureItem, Path> entry : absolutes.entrySet()) {
+            if (entry.getKey().isDirectory()) results[index] = this.writeItem(
+                    entry.getKey(), entry.getValue(), provider, evaluator);
+            index++;
+        }
+
+        List<Future<WriteResult>> writes = new ArrayList<>(absolutes.size());
+        try (ExecutorService executor = Executors
+                .newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<StructureItem, Path> entry : absolutes.entrySet()) {
+                StructureItem item = entry.getKey();
+                Path path = entry.getValue();
+                writes.add(item.isDirectory() ? null
+                        : executor.submit(() -> this.writeItemLimited(item,
+                                path, provider, evaluator, permits)));
+            }
+        }
+
+        index = 0;
+        for (Map.Entry<StructureItem, Path> entry : absolutes.entrySet()) {
+            Future<WriteResult> write = writes.get(index);
+            if (write != null) results[index] = Structure.await(write, entry
+                    .getKey(), entry.getValue());
+            index++;
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Returns the result of the given concurrent write, rethrowing anything
+     * the write failed with, just like a sequential write would.
+     * 
+     * @param write the write to wait for
+     * @param item the item being written
+     * @param path the absolute path the item is written at
+     * @return the result of the write, or an error result if the write was
+     * cancelled or the thread was interrupted while waiting for it
+     */
+    private static WriteResult await(Future<WriteResult> write,
+            StructureItem item, Path path) {
+        try {
+            return write.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        } catch (CancellationException e) {
+            return WriteResult.err(item, path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return WriteResult.err(item, path);
+        }
+    }
+
+    /**
+     * Writes the given item once a permit is available from the given
+     * semaphore, releasing the permit afterwards.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path the item should be written at
+     * @param provider the content provider for the item
+     * @param evaluator the evaluator for any found content for the item
+     * @param permits the semaphore limiting concurrent writes
+     * @return the result of the write, or an error result if the thread was
+     * interrupted before it could write
+     */
+    private WriteResult writeItemLimited(StructureItem item, Path path,
+            ContentProvider provider, ContentEvaluator evaluator,
+            Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return WriteResult.err(item, path);
+        }
+
+        try {
+            return this.writeItemReleasing(item, path, provider, evaluator);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Writes the given item as a task of its own, letting the evaluator
+     * release anything it keeps for the current thread afterwards.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path the item should be written at
+     * @param provider the content provider for the item
+     * @param evaluator the evaluator for any found content for the item
+     * @return the result of the write
+     * @see ContentEvaluator#releaseThread()
+     */
+    private WriteResult writeItemReleasing(StructureItem item, Path path,
+            ContentProvider provider, ContentEvaluator evaluator) {
+        try {
+            return this.writeItem(item, path, provider, evaluator);
+        } finally {
+            evaluator.releaseThread();
+        }
+    }
+
+    /**
+     * Writes only the items of the structure that are affected by a change to
+     * any of the given variables, according to the given index. The evaluator
+     * must already evaluate with the changed values.
+     * <p>
+     * Only the names of affected items are evaluated again. Every other item
+     * keeps the path it had in the index, since its path only depends on the
+     * names it references. Items whose path changed are written at their new
+     * path, but nothing is removed from their previous path. The new paths
+     * are recorded in the index, so it stays valid for later rewrites.
+     * 
+     * @param index the index of the dependencies of each item
+     * @param changed the identifiers of the changed variables
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to evaluate item names and content
+     * @return the write results for each affected item of this structure
+     * @see dev.zyrakia.neuw.variable.ctx.VariableContext#takeChanges()
+     */
+    public List<WriteResult> rewrite(DependencyIndex index, Set<String> changed,
+            ContentProvider provider, ContentEvaluator evaluator) {
+        Map<StructureItem, Path> affected = new LinkedHashMap<>();
+        Structure.mapAffected(this.root, this.rootItems, index, changed,
+                evaluator, affected);
+        List<WriteResult> results = new ArrayList<>(affected.size());
+
+        for (Map.Entry<StructureItem, Path> entry : affected.entrySet()) {
+            WriteResult res = this.writeItem(entry.getKey(), entry
+                    .getValue(), provider, evaluator);
+            results.add(res);
+        }
+
+        return results;
+    }
+
+    /**
+     * Maps the given items and their descendants that are affected by a
+     * change to any of the given variables to their absolute paths. Only the
+     * names of affected items are evaluated and their paths recorded in the
+     * index, the paths of other items are taken from the index.
+     * 
+     * @param root the absolute path the items are located in
+     * @param items the items to map
+     * @param index the index of the dependencies of each item
+     * @param changed the identifiers of the changed variables
+     * @param evaluator the evaluator to evaluate the item names
+     * @param affected the map to add the absolute paths of affected items to
+     */
+    private static void mapAffected(Path root, List<StructureItem> items,
+            DependencyIndex index, Set<String> changed,
+            ContentEvaluator evaluator, Map<StructureItem, Path> affected) {
+        for (StructureItem item : items) {
+            boolean isAffected = index.isAffected(item, changed);
+
+            Path path = index.pathOf(item);
+            if (isAffected) {
+                String name = evaluator.evaluate(item.getName(), item
+                        .getName());
+                path = name.isEmpty() ? null : root.resolve(name);
+                index.relocate(item, path);
+            }
+
+            if (path == null) continue;
+            if (isAffected) affected.put(item, path);
+
+            if (item.isDirectory()) Structure.mapAffected(path, item
+                    .getChildren(), index, changed, evaluator, affected);
+        }
+    }
+
+    /**
+     * Indexes which variables each item of the structure depends on, by
+     * compiling the names of all items and the content of all files.
+     * 
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to compile item names and content with
+     * @return the dependency index of this structure
+     */
+    public DependencyIndex index(ContentProvider provider,
+            ContentEvaluator evaluator) {
+        DependencyIndex index = new DependencyIndex();
+        this.indexItems(index, this.root, this.rootItems, Set.of(), provider,
+                evaluator);
+        return index;
+    }
+
+    /**
+     * Indexes the given items and their descendants.
+     * 
+     * @param index the index to add the items to
+     * @param root the absolute path the items are located in
+     * @param items the items to index
+     * @param inherited the names referenced by the names of the ancestors of
+     * the items, or null if they are unknown
+     * @param provider the provider of the content for each item
+     * @param evaluator the evaluator to compile item names and content with
+     */
+    private void indexItems(DependencyIndex index, Path root,
+            List<StructureItem> items, Set<String> inherited,
+            ContentProvider provider, ContentEvaluator evaluator) {
+        for (StructureItem item : items) {
+            CompiledTemplate name = evaluator.compile(item.getName(), item
+                    .getName());
+            Set<String> references = Structure.union(inherited, name
+                    .references());
+
+            String evaluatedName = evaluator.render(name);
+            if (evaluatedName.isEmpty()) {
+                index.add(item, references, null);
+                continue;
+            }
+
+            Path path = root.resolve(evaluatedName);
+            if (item.isDirectory()) {
+                index.add(item, references, path);
+                this.indexItems(index, path, item.getChildren(), references,
+                        provider, evaluator);
+                continue;
+            }
+
+            try {
+                String content = provider.evaluate(this.root.relativize(path));
+                references = Structure.union(references, evaluator
+                        .compile(content, item.getName()).references());
+            } catch (UnmatchedPathException e) {
+                // Files without content are written empty, so they only
+                // depend on their name.
+            }
+
+            index.add(item, references, path);
+        }
+    }
+
+    /**
+     * Combines the given sets of names.
+     * 
+     * @param a the first set, or null if it is unknown
+     * @param b the second set, or null if it is unknown
+     * @return the combined set, or null if either set is unknown
+     */
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        if (a == null || b == null) return null;
+
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+
     /**
      * Attempts to write the given item at the given absolute path. The content
      * of the item, if it is a file, will be evaluated with the given provider
@@ -101,6 +727,23 @@ public class Structure {
      */
     private WriteResult writeItem(StructureItem item, Path path,
             ContentProvider provider, ContentEvaluator evaluator) {
+        return this.writeItem(item, path, provider, evaluator, null);
+    }
+
+    /**
+     * Attempts to write the given item at the given absolute path, recording
+     * it in the given manifest if there is one.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path the item should be written at
+     * @param provider the content provider for the item
+     * @param evaluator the evaluator for any found content for the item
+     * @param manifest the manifest to regenerate against, or null
+     * @return the result of the write
+     */
+    private WriteResult writeItem(StructureItem item, Path path,
+            ContentProvider provider, ContentEvaluator evaluator,
+            GenerationManifest manifest) {
         boolean created;
         if (item.isDirectory()) {
             created = path.toFile().mkdir();
@@ -114,9 +757,40 @@ public class Structure {
         }
 
         try {
-            String content = evaluator.evaluate(provider
-                    .evaluate(this.root.relativize(path)), item.getName());
-            Files.writeString(path, content);
+            Path relative = this.root.relativize(path);
+            Path asset = provider.locateAsset(relative);
+            if (asset != null) return this.writeCopy(item, path, relative,
+                    asset, manifest, created);
+
+            if (this.verbatimCopy) {
+                Path source = provider.locateSource(relative);
+                if (source != null && this.literalScans.isLiteral(source,
+                        evaluator.getScanner()))
+                    return this.writeCopy(item, path, relative, source,
+                            manifest, created);
+            }
+
+            if (this.byteRendering && manifest == null)
+                return this.writeBytes(item, path, provider
+                        .evaluateBytes(relative), evaluator, created);
+
+            CharSequence content = provider.evaluateSequence(relative);
+            if (manifest != null) return this.writeTracked(item, path,
+                    relative, content, evaluator, manifest, created);
+            if (this.skipUnchanged && !created)
+                return this.writeIfChanged(item, path, content, evaluator);
+
+            Path temp = Structure.createSibling(path);
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp)) {
+                    evaluator.evaluate(content, item.getName(), writer);
+                }
+
+                Structure.replace(temp, path);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
             return WriteResult.written(item, path, !created);
         } catch (UnmatchedPathException e) {
             return WriteResult.writtenEmpty(item, path, !created);
@@ -125,4 +799,259 @@ public class Structure {
         }
     }
 
+    /**
+     * Creates an empty file next to the given path, that content can be
+     * streamed into before it replaces the file at the path. This way a
+     * render that fails halfway never leaves a partially written file behind.
+     * 
+     * @param path the path the content will replace
+     * @return the path of the created file
+     * @throws IOException if the file cannot be created
+     */
+    static Path createSibling(Path path) throws IOException {
+        Path sibling = path.resolveSibling("." + path.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                + ".tmp");
+        Files.newByteChannel(sibling, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE).close();
+        return sibling;
+    }
+
+    /**
+     * Moves the given rendered file over the given path, atomically if the
+     * file system supports it.
+     * 
+     * @param rendered the file holding the rendered content
+     * @param path the path to replace
+     * @throws IOException if the file cannot be moved
+     */
+    static void replace(Path rendered, Path path) throws IOException {
+        try {
+            Files.move(rendered, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(rendered, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Evaluates the given content and writes it at the given path of an
+     * existing file, unless the file already contains the exact same content.
+     * The rendered content is compared with the file as it is produced, so
+     * neither is held in memory.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path of the existing file
+     * @param content the content to evaluate
+     * @param evaluator the evaluator for the content
+     * @return the result of the write
+     * @throws IOException if the file cannot be read or written
+     * @see ComparingChannel
+     */
+    private WriteResult writeIfChanged(StructureItem item, Path path,
+            CharSequence content, ContentEvaluator evaluator)
+            throws IOException {
+        try (ComparingChannel channel = new ComparingChannel(path)) {
+            evaluator.evaluate(content, item.getName(), channel);
+            return channel.commit() ? WriteResult.written(item, path, true)
+                    : WriteResult.unchanged(item, path);
+        }
+    }
+
+    /**
+     * Evaluates the given encoded content and writes it at the given path of
+     * an existing file, unless the file already contains the exact same
+     * content.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path of the existing file
+     * @param content the UTF-8 encoded content to evaluate
+     * @param evaluator the evaluator for the content
+     * @return the result of the write
+     * @throws IOException if the file cannot be read or written
+     * @see ComparingChannel
+     */
+    private WriteResult writeIfChanged(StructureItem item, Path path,
+            ByteBuffer content, ContentEvaluator evaluator)
+            throws IOException {
+        try (ComparingChannel channel = new ComparingChannel(path)) {
+            evaluator.evaluate(content, item.getName(), channel);
+            return channel.commit() ? WriteResult.written(item, path, true)
+                    : WriteResult.unchanged(item, path);
+        }
+    }
+
+    /**
+     * Evaluates the given encoded content and writes it at the given path,
+     * without decoding its literal parts. The content is written into a
+     * sibling that replaces the file once it is complete. If the file existed
+     * and unchanged files are skipped, it is only written if its content
+     * differs.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path of the file
+     * @param content the UTF-8 encoded content to evaluate
+     * @param evaluator the evaluator for the content
+     * @param created whether the file did not exist before this write
+     * @return the result of the write
+     * @throws IOException if the file cannot be read or written
+     */
+    private WriteResult writeBytes(StructureItem item, Path path,
+            ByteBuffer content, ContentEvaluator evaluator, boolean created)
+            throws IOException {
+        if (this.skipUnchanged && !created)
+            return this.writeIfChanged(item, path, content, evaluator);
+
+        Path temp = Structure.createSibling(path);
+        try {
+            try (FileChannel out = FileChannel.open(temp,
+                    StandardOpenOption.WRITE)) {
+                evaluator.evaluate(content, item.getName(), out);
+            }
+
+            Structure.replace(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return WriteResult.written(item, path, !created);
+    }
+
+    /**
+     * Evaluates the given content and writes it at the given path, unless the
+     * inputs or the rendered content are unchanged according to the given
+     * manifest. Content with impure expressions is always rendered, since its
+     * inputs do not decide its output. The content is rendered into a sibling
+     * while it is hashed, which only replaces the file if the hash differs
+     * from the manifest. The file is recorded in the manifest either way.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path of the file
+     * @param relative the path of the file relative to the root
+     * @param content the content to evaluate
+     * @param evaluator the evaluator for the content
+     * @param manifest the manifest to regenerate against
+     * @param created whether the file did not exist before this write
+     * @return the result of the write
+     * @throws IOException if the file cannot be inspected or written
+     */
+    private WriteResult writeTracked(StructureItem item, Path path,
+            Path relative, CharSequence content, ContentEvaluator evaluator,
+            GenerationManifest manifest, boolean created) throws IOException {
+        String key = GenerationManifest.key(relative);
+        CompiledTemplate template = evaluator.compile(content, item.getName());
+        String inputHash = manifest.inputHash(key, content, template
+                .references());
+
+        GenerationManifest.Entry previous = manifest.previous(key);
+        boolean intact = !created && GenerationManifest.isIntact(path,
+                previous);
+        if (intact && template.isPure()
+                && previous.inputHash().equals(inputHash)) {
+            manifest.record(key, previous);
+            return WriteResult.unchanged(item, path);
+        }
+
+        Path temp = Structure.createSibling(path);
+        try {
+            String contentHash;
+            long size;
+            try (DigestingChannel out = new DigestingChannel(FileChannel
+                    .open(temp, StandardOpenOption.WRITE))) {
+                evaluator.render(template, out);
+                contentHash = out.hash();
+                size = out.size();
+            }
+
+            if (intact && previous.contentHash().equals(contentHash)) {
+                manifest.record(key, new GenerationManifest.Entry(inputHash,
+                        contentHash, size, previous.lastModified()));
+                return WriteResult.unchanged(item, path);
+            }
+
+            Structure.replace(temp, path);
+            manifest.record(key, new GenerationManifest.Entry(inputHash,
+                    contentHash, size, GenerationManifest.lastModified(path)));
+            return WriteResult.written(item, path, !created);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Copies the given asset, or source without expressions, to the given
+     * path, unless it is unchanged according to the given manifest, or the
+     * file at the path is identical to the asset and unchanged files are
+     * skipped. The asset is copied into a sibling that replaces the file once
+     * it is complete. If the asset shrinks while it is copied, only the bytes
+     * that are left are copied.
+     * 
+     * @param item the item to be written
+     * @param path the absolute path of the file
+     * @param relative the path of the file relative to the root
+     * @param asset the file to copy
+     * @param manifest the manifest to regenerate against, or null
+     * @param created whether the file did not exist before this write
+     * @return the result of the write
+     * @throws IOException if the asset cannot be copied
+     */
+    private WriteResult writeCopy(StructureItem item, Path path,
+            Path relative, Path asset, GenerationManifest manifest,
+            boolean created) throws IOException {
+        long size = Files.size(asset);
+
+        String key = null;
+        String inputHash = null;
+        if (manifest != null) {
+            key = GenerationManifest.key(relative);
+            inputHash = manifest.assetHash(key, size, GenerationManifest
+                    .lastModified(asset));
+
+            GenerationManifest.Entry previous = manifest.previous(key);
+            if (!created && previous != null && previous.inputHash().equals(
+                    inputHash) && GenerationManifest.isIntact(path,
+                            previous)) {
+                manifest.record(key, previous);
+                return WriteResult.unchanged(item, path);
+            }
+        }
+
+        if (this.skipUnchanged && !created && Files.size(path) == size
+                && Files.mismatch(asset, path) == -1) {
+            if (manifest != null) manifest.record(key,
+                    new GenerationManifest.Entry(inputHash, "", size,
+                            GenerationManifest.lastModified(path)));
+            return WriteResult.unchanged(item, path);
+        }
+
+        Path temp = Structure.createSibling(path);
+        try {
+            if (this.platformAssetCopy) {
+                Files.copy(asset, temp, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (FileChannel in = FileChannel.open(asset,
+                        StandardOpenOption.READ);
+                        FileChannel out = FileChannel.open(temp,
+                                StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    while (position < size) {
+                        long copied = in.transferTo(position, size - position,
+                                out);
+                        if (copied <= 0) break;
+                        position += copied;
+                    }
+                }
+            }
+
+            Structure.replace(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (manifest != null) manifest.record(key,
+                new GenerationManifest.Entry(inputHash, "", Files.size(path),
+                        GenerationManifest.lastModified(path)));
+        return WriteResult.copiedVerbatim(item, path, !created);
+    }
+
 }
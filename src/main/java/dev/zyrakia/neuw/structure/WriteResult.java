@@ -11,9 +11,54 @@ import java.nio.file.Path;
  * @param overwritten whether the item was created over an already existing item
  * @param contentWritten whether any content was written to the file, if the
  * result is about a file
+ * @param unchanged whether the file was left untouched, since it already
+ * contained the content that would have been written
+ * @param verbatim whether the content was copied byte for byte from its
+ * source, without being decoded or evaluated
  */
 public record WriteResult(StructureItem item, Path absPath, boolean success,
-        boolean overwritten, boolean contentWritten) {
+        boolean overwritten, boolean contentWritten, boolean unchanged,
+        boolean verbatim) {
+
+    /**
+     * Creates a new write result of an item whose file was not left
+     * untouched, and whose content was not copied verbatim.
+     * 
+     * @param item the item that was written
+     * @param absPath the absolute path of the item, where the writing
+     * occurred
+     * @param success whether the item was able to be written
+     * @param overwritten whether the item was created over an already
+     * existing item
+     * @param contentWritten whether any content was written to the file, if
+     * the result is about a file
+     */
+    public WriteResult(StructureItem item, Path absPath, boolean success,
+            boolean overwritten, boolean contentWritten) {
+        this(item, absPath, success, overwritten, contentWritten, false,
+                false);
+    }
+
+    /**
+     * Creates a new write result of an item whose content was not copied
+     * verbatim.
+     * 
+     * @param item the item that was written
+     * @param absPath the absolute path of the item, where the writing
+     * occurred
+     * @param success whether the item was able to be written
+     * @param overwritten whether the item was created over an already
+     * existing item
+     * @param contentWritten whether any content was written to the file, if
+     * the result is about a file
+     * @param unchanged whether the file was left untouched, since it already
+     * contained the content that would have been written
+     */
+    public WriteResult(StructureItem item, Path absPath, boolean success,
+            boolean overwritten, boolean contentWritten, boolean unchanged) {
+        this(item, absPath, success, overwritten, contentWritten, unchanged,
+                false);
+    }
 
     /**
      * Creates a new write result based off of the given item. The created
@@ -29,7 +74,7 @@ public record WriteResult(StructureItem item, Path absPath, boolean success,
     public static WriteResult written(StructureItem item, Path absPath,
             boolean overwritten) {
         return new WriteResult(item, absPath, true, overwritten, item
-                .isDirectory() ? false : true);
+                .isDirectory() ? false : true, false, false);
     }
 
     /**
@@ -58,7 +103,8 @@ public record WriteResult(StructureItem item, Path absPath, boolean success,
      */
     public static WriteResult writtenEmpty(StructureItem item, Path absPath,
             boolean overwritten) {
-        return new WriteResult(item, absPath, true, overwritten, false);
+        return new WriteResult(item, absPath, true, overwritten, false,
+                false, false);
     }
 
     /**
@@ -84,7 +130,39 @@ public record WriteResult(StructureItem item, Path absPath, boolean success,
      * @return the created result
      */
     public static WriteResult err(StructureItem item, Path absPath) {
-        return new WriteResult(item, absPath, false, false, false);
+        return new WriteResult(item, absPath, false, false, false, false,
+                false);
+    }
+
+    /**
+     * Creates a new result based off of the given item. The created result will
+     * indicate that the existing file of the item was left untouched, since it
+     * already contained the content that would have been written.
+     * 
+     * @param item the item that was not written
+     * @param absPath the absolute path of the existing file
+     * @return the created result
+     */
+    public static WriteResult unchanged(StructureItem item, Path absPath) {
+        return new WriteResult(item, absPath, true, false, false, true,
+                false);
+    }
+
+    /**
+     * Creates a new result based off of the given item. The created result will
+     * indicate that the content of the given item was copied verbatim from its
+     * source, since it contained nothing to evaluate.
+     * 
+     * @param item the item that was written
+     * @param absPath the absolute path of where the item was written
+     * @param overwritten whether the item already existed on the disk at the
+     * time of writing
+     * @return the created result
+     */
+    public static WriteResult copiedVerbatim(StructureItem item, Path absPath,
+            boolean overwritten) {
+        return new WriteResult(item, absPath, true, overwritten, true, false,
+                true);
     }
 
 }
\ No newline at end of file
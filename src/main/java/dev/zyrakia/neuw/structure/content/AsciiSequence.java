@@ -0,0 +1,82 @@
+package dev.zyrakia.neuw.structure.content;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A character sequence that views a buffer of ASCII bytes as characters,
+ * without copying or decoding them.
+ */
+final class AsciiSequence implements CharSequence {
+
+    /**
+     * The buffer holding the bytes.
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * The index of the first byte of this sequence within the buffer.
+     */
+    private final int offset;
+
+    /**
+     * The amount of bytes in this sequence.
+     */
+    private final int length;
+
+    /**
+     * Creates a new sequence viewing the given range of the given buffer.
+     *
+     * @param bytes the buffer holding the bytes, which must only contain ASCII
+     * within the range
+     * @param offset the index of the first byte of the sequence
+     * @param length the amount of bytes in the sequence
+     */
+    AsciiSequence(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns whether the given buffer only contains ASCII between its
+     * position and limit.
+     *
+     * @param bytes the buffer to check
+     * @return true if every byte is ASCII, false otherwise
+     */
+    static boolean isAscii(ByteBuffer bytes) {
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int length() { return this.length; }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length)
+            throw new IndexOutOfBoundsException(index);
+
+        return (char) this.bytes.get(this.offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > this.length || start > end)
+            throw new IndexOutOfBoundsException();
+
+        return new AsciiSequence(this.bytes, this.offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] copy = new byte[this.length];
+        this.bytes.get(this.offset, copy);
+        return new String(copy, StandardCharsets.US_ASCII);
+    }
+
+}
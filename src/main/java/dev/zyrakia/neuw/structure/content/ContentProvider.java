@@ -1,5 +1,7 @@
 package dev.zyrakia.neuw.structure.content;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 
 import dev.zyrakia.neuw.exception.UnmatchedPathException;
@@ -20,4 +22,68 @@ public interface ContentProvider {
 	 */
 	public String evaluate(Path path) throws UnmatchedPathException;
 
+	/**
+	 * Evaluates the given path to the content at that path, which may be
+	 * returned as a sequence that is not held in the heap as a whole.
+	 * <p>
+	 * By default the content is evaluated as a string.
+	 *
+	 * @param path the path to evaluate
+	 * @return the content at the path
+	 * @throws UnmatchedPathException if the given path cannot be matched to
+	 * content
+	 */
+	public default CharSequence evaluateSequence(Path path)
+			throws UnmatchedPathException {
+		return this.evaluate(path);
+	}
+
+	/**
+	 * Evaluates the given path to the UTF-8 encoding of the content at that
+	 * path, so that it can be rendered without being decoded.
+	 * <p>
+	 * By default the content is evaluated as a string and encoded.
+	 *
+	 * @param path the path to evaluate
+	 * @return the encoded content at the path, between the position and limit
+	 * of the buffer
+	 * @throws UnmatchedPathException if the given path cannot be matched to
+	 * content
+	 */
+	public default ByteBuffer evaluateBytes(Path path)
+			throws UnmatchedPathException {
+		return ByteBuffer.wrap(this.evaluate(path)
+				.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Locates the file holding the content at the given path, if the content
+	 * is an asset that should be copied as is, without being read or
+	 * evaluated.
+	 * <p>
+	 * By default no content is an asset.
+	 *
+	 * @param path the path to locate
+	 * @return the file holding the asset, or {@code null} if the content at the
+	 * path is not an asset
+	 */
+	public default Path locateAsset(Path path) {
+		return null;
+	}
+
+	/**
+	 * Locates the file holding the content at the given path, if the content
+	 * is read from a file as UTF-8 without any changes, so that the file can
+	 * be inspected and copied without evaluating it.
+	 * <p>
+	 * By default content is not located in a file.
+	 *
+	 * @param path the path to locate
+	 * @return the file holding the content, or {@code null} if the content is
+	 * not held by a file
+	 */
+	public default Path locateSource(Path path) {
+		return null;
+	}
+
 }
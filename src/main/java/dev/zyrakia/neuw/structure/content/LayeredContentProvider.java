@@ -0,0 +1,332 @@
+package dev.zyrakia.neuw.structure.content;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import dev.zyrakia.neuw.exception.UnmatchedPathException;
+
+/**
+ * This content provider composes the content of multiple root content
+ * providers, such as a base directory and several overlay directories. A path
+ * is evaluated by the last layer that has a file at that path, so later
+ * layers override earlier ones.
+ *
+ * All layers are walked once when the provider is created, following symbolic
+ * links, to build an index of each relative path to the layer that holds it,
+ * along with the size and modification time of its file. Lookups are answered
+ * from the index, so paths that do not exist in any layer are rejected
+ * without touching the disk.
+ *
+ * Before the winning file is read, its attributes are read once and compared
+ * with the index. If the file changed since it was indexed, the path is
+ * resolved through the layers again and read with its current size, so a file
+ * that grew or shrank is never read with a stale size. Files that are added to
+ * a higher layer are not noticed this way; the index can be rebuilt with
+ * {@link #reindex()}, or kept up to date by registering the layers with a
+ * {@link WatchService} through {@link #watch(WatchService)} and calling
+ * {@link #refresh()} before each use.
+ */
+public class LayeredContentProvider implements ContentProvider {
+
+    /**
+     * Represents the indexed file of a relative path.
+     *
+     * @param layer the index of the layer holding the file
+     * @param file the absolute path of the file
+     * @param size the size of the file when it was indexed
+     * @param lastModified the modification time of the file when it was
+     * indexed, in nanoseconds since the epoch
+     */
+    public record Entry(int layer, Path file, long size, long lastModified) {
+
+        /**
+         * Creates the entry of a file from its attributes.
+         *
+         * @param layer the index of the layer holding the file
+         * @param file the absolute path of the file
+         * @param attributes the attributes of the file
+         * @return the entry
+         */
+        static Entry of(int layer, Path file, BasicFileAttributes attributes) {
+            return new Entry(layer, file, attributes.size(), attributes
+                    .lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        }
+
+        /**
+         * Returns whether the given attributes describe the file as it was
+         * when it was indexed.
+         *
+         * @param attributes the current attributes of the file
+         * @return true if the size and modification time are unchanged
+         */
+        boolean matches(BasicFileAttributes attributes) {
+            return attributes.isRegularFile() && attributes.size() == this.size
+                    && attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                            == this.lastModified;
+        }
+
+    }
+
+    /**
+     * Represents the layers of this provider, from lowest to highest
+     * precedence.
+     */
+    private final List<RootContentProvider> layers;
+
+    /**
+     * Represents the index of relative paths to their winning file.
+     */
+    private volatile Map<Path, Entry> index = Map.of();
+
+    /**
+     * Represents the watch service the layers are registered with, if any.
+     */
+    private WatchService watcher = null;
+
+    /**
+     * Creates a new layered content provider over the given layers, and builds
+     * its index.
+     *
+     * @param layers the layers to compose, from lowest to highest precedence
+     * @throws IOException if a layer cannot be walked
+     */
+    public LayeredContentProvider(List<RootContentProvider> layers)
+            throws IOException {
+        this.layers = List.copyOf(layers);
+        this.reindex();
+    }
+
+    /**
+     * Returns the layers of this provider, from lowest to highest precedence.
+     *
+     * @return the layers
+     */
+    public List<RootContentProvider> getLayers() { return this.layers; }
+
+    /**
+     * Walks every layer and replaces the index with the files that are
+     * currently in them. If the layers are watched, any new directories are
+     * registered with the watch service as well.
+     *
+     * @throws IOException if a layer cannot be walked
+     */
+    public synchronized void reindex() throws IOException {
+        Map<Path, Entry> index = new HashMap<>();
+
+        for (int i = 0; i < this.layers.size(); i++) {
+            int layer = i;
+            Path root = this.layers.get(i).getRootPath();
+            if (!Files.isDirectory(root)) continue;
+
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                    Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir,
+                        BasicFileAttributes attributes) throws IOException {
+                    LayeredContentProvider.this.register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile()) index.put(root
+                            .relativize(file), Entry.of(layer, file,
+                                    attributes));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file,
+                        IOException e) throws IOException {
+                    if (e instanceof FileSystemLoopException)
+                        return FileVisitResult.CONTINUE;
+                    throw e;
+                }
+            });
+        }
+
+        this.index = Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Registers every directory of every layer with the given watch service,
+     * so that {@link #refresh()} can rebuild the index when files are created,
+     * deleted or modified.
+     *
+     * @param watcher the watch service to register with
+     * @throws IOException if a directory cannot be registered, or a layer
+     * cannot be walked
+     */
+    public synchronized void watch(WatchService watcher) throws IOException {
+        this.watcher = watcher;
+        this.reindex();
+    }
+
+    /**
+     * Takes every pending event of the watch service the layers are
+     * registered with, and rebuilds the index if there were any. Nothing is
+     * done if the layers are not watched.
+     *
+     * @return true if the index was rebuilt, false otherwise
+     * @throws IOException if a layer cannot be walked
+     */
+    public synchronized boolean refresh() throws IOException {
+        if (this.watcher == null) return false;
+
+        boolean changed = false;
+        WatchKey key;
+        while ((key = this.watcher.poll()) != null) {
+            if (!key.pollEvents().isEmpty()) changed = true;
+            if (!key.reset()) changed = true;
+        }
+
+        if (changed) this.reindex();
+        return changed;
+    }
+
+    /**
+     * Registers the given directory with the watch service, if there is one.
+     *
+     * @param dir the directory to register
+     * @throws IOException if the directory cannot be registered
+     */
+    private void register(Path dir) throws IOException {
+        if (this.watcher == null) return;
+
+        dir.register(this.watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Returns the indexed file of the given relative path.
+     *
+     * @param path the relative path to look up
+     * @return the indexed entry, or {@code null} if no layer has a file at the
+     * path
+     */
+    public Entry lookup(Path path) {
+        return this.index.get(path);
+    }
+
+    /**
+     * Returns every indexed relative path with its winning file.
+     *
+     * @return the index
+     */
+    public Map<Path, Entry> entries() { return this.index; }
+
+    /**
+     * Returns the current file of the given relative path. The indexed file
+     * is returned if it did not change since it was indexed, otherwise the
+     * path is resolved through the layers again, from highest to lowest
+     * precedence.
+     *
+     * @param path the relative path to resolve
+     * @return the entry describing the file as it currently is
+     * @throws IOException if the attributes of a file cannot be read
+     * @throws UnmatchedPathException if no layer has a file at the path
+     */
+    private Entry entryOf(Path path) throws IOException,
+            UnmatchedPathException {
+        Entry entry = this.index.get(path);
+        if (entry == null) throw new UnmatchedPathException(path);
+
+        BasicFileAttributes attributes = LayeredContentProvider.attributesOf(
+                entry.file());
+        if (attributes != null && entry.matches(attributes)) return entry;
+
+        for (int i = this.layers.size() - 1; i >= 0; i--) {
+            Path file = this.layers.get(i).getRootPath().resolve(path);
+            attributes = LayeredContentProvider.attributesOf(file);
+            if (attributes != null && attributes.isRegularFile())
+                return Entry.of(i, file, attributes);
+        }
+
+        throw new UnmatchedPathException(path);
+    }
+
+    /**
+     * Reads the attributes of the given file, following symbolic links.
+     *
+     * @param file the file to read the attributes of
+     * @return the attributes, or {@code null} if the file does not exist
+     * @throws IOException if the attributes cannot be read
+     */
+    private static BasicFileAttributes attributesOf(Path file)
+            throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String evaluate(Path path) throws UnmatchedPathException {
+        try {
+            Entry entry = this.entryOf(path);
+            return Files.readString(entry.file());
+        } catch (IOException e) {
+            throw new UnmatchedPathException(path);
+        }
+    }
+
+    @Override
+    public CharSequence evaluateSequence(Path path)
+            throws UnmatchedPathException {
+        try {
+            Entry entry = this.entryOf(path);
+            return this.layers.get(entry.layer()).readSequence(entry.file(),
+                    entry.size());
+        } catch (IOException e) {
+            throw new UnmatchedPathException(path);
+        }
+    }
+
+    @Override
+    public ByteBuffer evaluateBytes(Path path) throws UnmatchedPathException {
+        try {
+            Entry entry = this.entryOf(path);
+            return this.layers.get(entry.layer()).readBytes(entry.file(),
+                    entry.size());
+        } catch (IOException e) {
+            throw new UnmatchedPathException(path);
+        }
+    }
+
+    @Override
+    public Path locateAsset(Path path) {
+        Entry entry = this.index.get(path);
+        if (entry == null) return null;
+
+        Path file = entry.file();
+        return this.layers.get(entry.layer()).isAsset(path, file) ? file
+                : null;
+    }
+
+    @Override
+    public Path locateSource(Path path) {
+        Entry entry = this.index.get(path);
+        return entry == null ? null : entry.file();
+    }
+
+}
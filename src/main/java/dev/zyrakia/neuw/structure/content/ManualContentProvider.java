@@ -4,10 +4,16 @@ import dev.zyrakia.neuw.exception.UnmatchedPathException;
 
 import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.Map;
 
 /**
  * This content provider allows for manually setting content at a given path.
+ * <p>
+ * Content can also be set for every path below a prefix, or for every path
+ * matching a glob pattern such as {@code src/**}{@code /*.ts}, to act as
+ * default content. Content set at an exact path always takes precedence, and
+ * otherwise the most specific matching pattern is used. Patterns are compared
+ * segment by segment, where a literal segment is more specific than a glob
+ * segment, which is more specific than a {@code **} segment.
  */
 public class ManualContentProvider implements ContentProvider {
 
@@ -16,6 +22,11 @@ public class ManualContentProvider implements ContentProvider {
 	 */
 	private final HashMap<Path, String> contentTable = new HashMap<>();
 
+	/**
+	 * The internal record of path patterns to their content.
+	 */
+	private final PathTrie<String> patternTable = new PathTrie<>();
+
 	/**
 	 * Sets the given content at the given path.
 	 *
@@ -35,11 +46,58 @@ public class ManualContentProvider implements ContentProvider {
 		this.contentTable.remove(path);
 	}
 
+	/**
+	 * Sets the given content for every path below the given prefix, which is
+	 * used for paths that have no content set at them exactly.
+	 *
+	 * @param prefix the path whose descendants the content is set for
+	 * @param content the content to set
+	 */
+	public void setPrefix(Path prefix, String content) {
+		this.patternTable.putPrefix(prefix, content);
+	}
+
+	/**
+	 * Clears the content set for the descendants of the given prefix.
+	 *
+	 * @param prefix the prefix to clear
+	 */
+	public void clearPrefix(Path prefix) {
+		this.patternTable.removePrefix(prefix);
+	}
+
+	/**
+	 * Sets the given content for every path matching the given glob pattern,
+	 * which is used for paths that have no content set at them exactly.
+	 * Segments of the pattern are separated by {@code /}, and a {@code **}
+	 * segment matches any amount of path segments.
+	 *
+	 * @param glob the pattern to set the content for
+	 * @param content the content to set
+	 * @throws IllegalArgumentException if the pattern is empty
+	 */
+	public void setPattern(String glob, String content)
+			throws IllegalArgumentException {
+		this.patternTable.put(glob, content);
+	}
+
+	/**
+	 * Clears the content set for the given glob pattern.
+	 *
+	 * @param glob the pattern to clear
+	 * @throws IllegalArgumentException if the pattern is empty
+	 */
+	public void clearPattern(String glob) throws IllegalArgumentException {
+		this.patternTable.remove(glob);
+	}
+
 	@Override
 	public String evaluate(Path path) throws UnmatchedPathException {
-		for (Map.Entry<Path, String> entry : this.contentTable.entrySet()) {
-			if (entry.getKey().equals(path)) return entry.getValue();
-		}
+		String content = this.contentTable.get(path);
+		if (content != null) return content;
+
+		content = this.patternTable.match(path);
+		if (content != null) return content;
 
 		throw new UnmatchedPathException(path);
 	}
@@ -0,0 +1,533 @@
+package dev.zyrakia.neuw.structure.content;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents values stored under glob patterns of relative paths, organized
+ * by path segment so that a lookup only visits the patterns that can match.
+ * <p>
+ * Patterns are split into segments at every {@code /} outside of brace and
+ * bracket groups. A segment is matched literally, unless it contains glob
+ * syntax, in which case it is matched against a single path segment with the
+ * default file system's {@code glob:} syntax. A {@code **} segment matches any
+ * amount of path segments, but at least one if it ends the pattern. Brace
+ * groups with an alternative that contains a {@code /} are expanded before
+ * splitting, so {@code {a,b/c}} is stored as both {@code a} and {@code b/c}.
+ * <p>
+ * When multiple patterns match a path, the most specific one wins. Patterns
+ * are compared segment by segment from the start of the path, where a literal
+ * segment is more specific than a glob segment, which is more specific than a
+ * {@code **}. Remaining ties are won by the pattern with the most literal
+ * characters, and then by the most recently stored pattern.
+ *
+ * @param <V> the type of the stored values
+ */
+final class PathTrie<V> {
+
+	/**
+	 * The rank of a path segment matched by {@code **}.
+	 */
+	private static final int ANY = 0;
+
+	/**
+	 * The rank of a path segment matched by a glob segment.
+	 */
+	private static final int GLOB = 1;
+
+	/**
+	 * The rank of a path segment matched by a literal segment.
+	 */
+	private static final int LITERAL = 2;
+
+	/**
+	 * Represents a segment of a pattern.
+	 *
+	 * @param rank the rank of path segments that this segment matches
+	 * @param text the text of the segment
+	 */
+	private record Element(int rank, String text) {}
+
+	/**
+	 * Represents a node of the trie, reached by a sequence of pattern
+	 * segments.
+	 *
+	 * @param <V> the type of the stored values
+	 */
+	private static final class Node<V> {
+
+		/**
+		 * The matcher of path segments that lead to this node, if it was
+		 * reached by a glob segment.
+		 */
+		private final PathMatcher matcher;
+
+		/**
+		 * The children reached by literal segments, by their text.
+		 */
+		private final Map<String, Node<V>> literals = new HashMap<>();
+
+		/**
+		 * The children reached by glob segments, by their text.
+		 */
+		private final Map<String, Node<V>> globs = new LinkedHashMap<>();
+
+		/**
+		 * The child reached by a {@code **} segment, if any.
+		 */
+		private Node<V> any = null;
+
+		/**
+		 * The value of the pattern ending at this node, if any.
+		 */
+		private V value = null;
+
+		/**
+		 * The amount of literal characters in the pattern ending at this
+		 * node.
+		 */
+		private int literalLength = 0;
+
+		/**
+		 * The order in which the pattern ending at this node was stored.
+		 */
+		private long sequence = 0;
+
+		/**
+		 * Creates a new node.
+		 *
+		 * @param matcher the matcher of path segments leading to the node, or
+		 * null if it is not reached by a glob segment
+		 */
+		private Node(PathMatcher matcher) {
+			this.matcher = matcher;
+		}
+
+		/**
+		 * Returns whether this node neither holds a value nor has children.
+		 *
+		 * @return true if the node is empty, false otherwise
+		 */
+		private boolean isEmpty() {
+			return this.value == null && this.literals.isEmpty()
+					&& this.globs.isEmpty() && this.any == null;
+		}
+
+	}
+
+	/**
+	 * Represents the most specific match found so far during a lookup.
+	 */
+	private final class Best {
+
+		/**
+		 * The ranks of the path segments of the best match.
+		 */
+		private int[] ranks = null;
+
+		/**
+		 * The node of the best match.
+		 */
+		private Node<V> node = null;
+
+		/**
+		 * Replaces the best match with the given match if it is more specific.
+		 *
+		 * @param ranks the ranks of the path segments of the match
+		 * @param node the node of the match
+		 */
+		private void offer(int[] ranks, Node<V> node) {
+			if (this.node != null) {
+				int compared = Arrays.compare(ranks, this.ranks);
+				if (compared == 0) compared = Integer.compare(node
+						.literalLength, this.node.literalLength);
+				if (compared == 0) compared = Long.compare(node.sequence,
+						this.node.sequence);
+				if (compared <= 0) return;
+			}
+
+			this.ranks = ranks.clone();
+			this.node = node;
+		}
+
+	}
+
+	/**
+	 * The root node, reached by no segments.
+	 */
+	private final Node<V> root = new Node<>(null);
+
+	/**
+	 * The order given to the next stored pattern.
+	 */
+	private long sequence = 0;
+
+	/**
+	 * The amount of stored patterns.
+	 */
+	private int size = 0;
+
+	/**
+	 * Stores the given value under the given glob pattern, replacing any value
+	 * already stored under the same pattern.
+	 *
+	 * @param glob the pattern to store the value under
+	 * @param value the value to store
+	 * @throws IllegalArgumentException if the pattern is empty
+	 */
+	void put(String glob, V value) throws IllegalArgumentException {
+		for (String expanded : PathTrie.expand(glob)) {
+			this.put(PathTrie.parse(expanded), value);
+		}
+	}
+
+	/**
+	 * Stores the given value for every path below the given prefix, replacing
+	 * any value already stored for the same prefix. The prefix itself is not
+	 * matched.
+	 *
+	 * @param prefix the path whose descendants the value is stored for
+	 * @param value the value to store
+	 */
+	void putPrefix(Path prefix, V value) {
+		this.put(PathTrie.prefix(prefix), value);
+	}
+
+	/**
+	 * Removes the value stored under the given glob pattern.
+	 *
+	 * @param glob the pattern to remove
+	 * @throws IllegalArgumentException if the pattern is empty
+	 */
+	void remove(String glob) throws IllegalArgumentException {
+		for (String expanded : PathTrie.expand(glob)) {
+			this.remove(PathTrie.parse(expanded));
+		}
+	}
+
+	/**
+	 * Removes the value stored for the descendants of the given prefix.
+	 *
+	 * @param prefix the prefix to remove
+	 */
+	void removePrefix(Path prefix) {
+		this.remove(PathTrie.prefix(prefix));
+	}
+
+	/**
+	 * Returns the value of the most specific pattern that matches the given
+	 * relative path.
+	 *
+	 * @param path the path to match
+	 * @return the matched value, or null if no pattern matches the path
+	 */
+	V match(Path path) {
+		if (this.size == 0) return null;
+
+		Best best = new Best();
+		this.match(this.root, path, 0, new int[path.getNameCount()], best);
+		return best.node == null ? null : best.node.value;
+	}
+
+	/**
+	 * Matches the remaining segments of the given path against the patterns
+	 * below the given node, offering every full match to the given best match.
+	 *
+	 * @param node the node reached so far
+	 * @param path the path to match
+	 * @param index the index of the next path segment to match
+	 * @param ranks the ranks of the path segments matched so far
+	 * @param best the best match found so far
+	 */
+	private void match(Node<V> node, Path path, int index, int[] ranks,
+			Best best) {
+		int count = path.getNameCount();
+
+		if (index == count) {
+			if (node.value != null) best.offer(ranks, node);
+		} else {
+			Path segment = path.getName(index);
+
+			Node<V> literal = node.literals.get(segment.toString());
+			if (literal != null) {
+				ranks[index] = LITERAL;
+				this.match(literal, path, index + 1, ranks, best);
+			}
+
+			for (Node<V> glob : node.globs.values()) {
+				if (!glob.matcher.matches(segment)) continue;
+
+				ranks[index] = GLOB;
+				this.match(glob, path, index + 1, ranks, best);
+			}
+		}
+
+		Node<V> any = node.any;
+		if (any == null) return;
+
+		for (int end = index; end <= count; end++) {
+			if (end > index) ranks[end - 1] = ANY;
+			if (end == index && end == count) continue;
+
+			this.match(any, path, end, ranks, best);
+		}
+	}
+
+	/**
+	 * Stores the given value under the given pattern segments.
+	 *
+	 * @param elements the segments of the pattern
+	 * @param value the value to store
+	 */
+	private void put(List<Element> elements, V value) {
+		Node<V> node = this.root;
+		int literalLength = 0;
+
+		for (Element element : elements) {
+			String text = element.text();
+
+			if (element.rank() == LITERAL) {
+				node = node.literals.computeIfAbsent(text,
+						(t) -> new Node<>(null));
+				literalLength += text.length();
+			} else if (element.rank() == GLOB) {
+				node = node.globs.computeIfAbsent(text,
+						(t) -> new Node<>(FileSystems.getDefault()
+								.getPathMatcher("glob:" + t)));
+				literalLength += PathTrie.literalLength(text);
+			} else {
+				if (node.any == null) node.any = new Node<>(null);
+				node = node.any;
+			}
+		}
+
+		if (node.value == null) this.size++;
+		node.value = value;
+		node.literalLength = literalLength;
+		node.sequence = this.sequence++;
+	}
+
+	/**
+	 * Removes the value stored under the given pattern segments, along with
+	 * every node that no longer leads to a stored value.
+	 *
+	 * @param elements the segments of the pattern
+	 */
+	private void remove(List<Element> elements) {
+		List<Node<V>> nodes = new ArrayList<>();
+		Node<V> node = this.root;
+
+		for (Element element : elements) {
+			nodes.add(node);
+
+			if (element.rank() == LITERAL) node = node.literals
+					.get(element.text());
+			else if (element.rank() == GLOB) node = node.globs
+					.get(element.text());
+			else node = node.any;
+
+			if (node == null) return;
+		}
+
+		if (node.value == null) return;
+		node.value = null;
+		this.size--;
+
+		for (int i = elements.size() - 1; i >= 0; i--) {
+			if (!node.isEmpty()) return;
+
+			Node<V> parent = nodes.get(i);
+			Element element = elements.get(i);
+			if (element.rank() == LITERAL) parent.literals
+					.remove(element.text());
+			else if (element.rank() == GLOB) parent.globs
+					.remove(element.text());
+			else parent.any = null;
+
+			node = parent;
+		}
+	}
+
+	/**
+	 * Splits the given glob pattern into its segments.
+	 *
+	 * @param glob the pattern to split
+	 * @return the segments of the pattern
+	 * @throws IllegalArgumentException if the pattern is empty
+	 */
+	private static List<Element> parse(String glob)
+			throws IllegalArgumentException {
+		List<Element> elements = new ArrayList<>();
+
+		for (String text : PathTrie.split(glob)) {
+			if (text.isEmpty()) continue;
+
+			if (text.equals("**")) {
+				if (!elements.isEmpty() && elements.get(elements.size() - 1)
+						.rank() == ANY)
+					continue;
+
+				elements.add(new Element(ANY, text));
+			} else if (PathTrie.literalLength(text) < text.length()) {
+				elements.add(new Element(GLOB, text));
+			} else elements.add(new Element(LITERAL, text));
+		}
+
+		if (elements.isEmpty()) throw new IllegalArgumentException(
+				"Path patterns cannot be empty.");
+
+		return elements;
+	}
+
+	/**
+	 * Splits the given glob pattern at every {@code /} that is outside of
+	 * brace and bracket groups.
+	 *
+	 * @param glob the pattern to split
+	 * @return the parts of the pattern
+	 */
+	private static List<String> split(String glob) {
+		List<String> parts = new ArrayList<>();
+		int depth = 0;
+		boolean bracket = false;
+		int start = 0;
+
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+
+			if (c == '\\') i++;
+			else if (bracket) bracket = c != ']';
+			else if (c == '[') bracket = true;
+			else if (c == '{') depth++;
+			else if (c == '}' && depth > 0) depth--;
+			else if (c == '/' && depth == 0) {
+				parts.add(glob.substring(start, i));
+				start = i + 1;
+			}
+		}
+
+		parts.add(glob.substring(start));
+		return parts;
+	}
+
+	/**
+	 * Expands every brace group of the given glob pattern that has an
+	 * alternative containing a {@code /} into separate patterns, since a glob
+	 * segment can only match a single path segment. Other brace groups are
+	 * kept as they are.
+	 *
+	 * @param glob the pattern to expand
+	 * @return the expanded patterns
+	 */
+	private static List<String> expand(String glob) {
+		boolean bracket = false;
+		int depth = 0;
+		int open = -1;
+		boolean slash = false;
+
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+
+			if (c == '\\') i++;
+			else if (bracket) bracket = c != ']';
+			else if (c == '[') bracket = true;
+			else if (c == '{') {
+				if (depth++ == 0) {
+					open = i;
+					slash = false;
+				}
+			} else if (c == '/' && depth > 0) slash = true;
+			else if (c == '}' && depth > 0 && --depth == 0 && slash) {
+				String head = glob.substring(0, open);
+				String tail = glob.substring(i + 1);
+				List<String> expanded = new ArrayList<>();
+
+				for (String alternative : PathTrie.alternatives(glob
+						.substring(open + 1, i))) {
+					expanded.addAll(PathTrie.expand(head + alternative
+							+ tail));
+				}
+
+				return expanded;
+			}
+		}
+
+		return List.of(glob);
+	}
+
+	/**
+	 * Splits the body of a brace group at every {@code ,} that is outside of
+	 * nested brace and bracket groups.
+	 *
+	 * @param body the text between the braces of the group
+	 * @return the alternatives of the group
+	 */
+	private static List<String> alternatives(String body) {
+		List<String> alternatives = new ArrayList<>();
+		int depth = 0;
+		boolean bracket = false;
+		int start = 0;
+
+		for (int i = 0; i < body.length(); i++) {
+			char c = body.charAt(i);
+
+			if (c == '\\') i++;
+			else if (bracket) bracket = c != ']';
+			else if (c == '[') bracket = true;
+			else if (c == '{') depth++;
+			else if (c == '}' && depth > 0) depth--;
+			else if (c == ',' && depth == 0) {
+				alternatives.add(body.substring(start, i));
+				start = i + 1;
+			}
+		}
+
+		alternatives.add(body.substring(start));
+		return alternatives;
+	}
+
+	/**
+	 * Creates the segments of a pattern that matches every descendant of the
+	 * given path.
+	 *
+	 * @param prefix the path to match the descendants of
+	 * @return the segments of the pattern
+	 */
+	private static List<Element> prefix(Path prefix) {
+		List<Element> elements = new ArrayList<>();
+		for (Path name : prefix) {
+			elements.add(new Element(LITERAL, name.toString()));
+		}
+
+		elements.add(new Element(ANY, "**"));
+		return elements;
+	}
+
+	/**
+	 * Counts the characters of the given glob segment that are not glob
+	 * syntax.
+	 *
+	 * @param text the segment to count
+	 * @return the amount of literal characters
+	 */
+	private static int literalLength(String text) {
+		int length = 0;
+
+		for (int i = 0; i < text.length(); i++) {
+			switch (text.charAt(i)) {
+				case '*', '?', '[', ']', '{', '}', '\\' -> {}
+				default -> length++;
+			}
+		}
+
+		return length;
+	}
+
+}
@@ -1,8 +1,13 @@
 package dev.zyrakia.neuw.structure.content;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import dev.zyrakia.neuw.exception.UnmatchedPathException;
 
@@ -13,14 +18,41 @@ import dev.zyrakia.neuw.exception.UnmatchedPathException;
  * 
  * Any paths that cannot be accessed, will resolve via an
  * {@link UnmatchedPathException}.
+ * 
+ * Files that match the asset matcher, or that look binary if there is no
+ * asset matcher, are treated as assets which are copied as is instead of
+ * being evaluated.
+ * 
+ * Files at or above the mapping threshold are memory-mapped when read as a
+ * sequence, so that their content is never copied into the heap as a whole.
+ * A mapped file stays mapped until the returned content is garbage collected,
+ * since mappings cannot be released explicitly, so the content should not be
+ * held on to longer than needed.
  */
 public class RootContentProvider implements ContentProvider {
 
+    /**
+     * The amount of bytes at the start of a file that are inspected to decide
+     * whether the file is binary.
+     */
+    public static final int BINARY_PROBE_SIZE = 8192;
+
     /**
      * Represents the root path of this provider.
      */
     private Path rootPath;
 
+    /**
+     * Represents the matcher of relative paths that are assets, if any.
+     */
+    private PathMatcher assetMatcher = null;
+
+    /**
+     * Represents the size in bytes at which files are memory-mapped when read
+     * as a sequence, or a negative value if files are never mapped.
+     */
+    private long mappingThreshold = -1;
+
     /**
      * Creates a new content provider with the given root path to resolve all
      * content.
@@ -31,6 +63,103 @@ public class RootContentProvider implements ContentProvider {
         this.rootPath = rootPath;
     }
 
+    /**
+     * Returns the root path that this provider evaluates content from.
+     * 
+     * @return the root path
+     */
+    public Path getRootPath() { return this.rootPath; }
+
+    /**
+     * Sets the matcher of relative paths whose content is treated as an
+     * asset. Once a matcher is set, it alone decides which files are assets,
+     * so files no longer need to be opened and probed for binary content
+     * before they are read.
+     * 
+     * @param assetMatcher the matcher of asset paths, or {@code null} to treat
+     * every file that looks binary as an asset
+     */
+    public void setAssetMatcher(PathMatcher assetMatcher) {
+        this.assetMatcher = assetMatcher;
+    }
+
+    /**
+     * Returns the matcher of relative paths whose content is treated as an
+     * asset.
+     * 
+     * @return the asset matcher, or {@code null} if there is none
+     */
+    public PathMatcher getAssetMatcher() { return this.assetMatcher; }
+
+    /**
+     * Sets the size at which files are memory-mapped when read as a sequence.
+     * Smaller files are read into a string as usual, since mapping has a fixed
+     * cost that only pays off for large files.
+     * 
+     * @param mappingThreshold the size in bytes at which files are mapped, or
+     * a negative value to never map files
+     * @see #evaluateSequence(Path)
+     */
+    public void setMappingThreshold(long mappingThreshold) {
+        this.mappingThreshold = mappingThreshold;
+    }
+
+    /**
+     * Returns the size at which files are memory-mapped when read as a
+     * sequence.
+     * 
+     * @return the size in bytes, or a negative value if files are never mapped
+     */
+    public long getMappingThreshold() { return this.mappingThreshold; }
+
+    /**
+     * Locates the file at the given path if it matches the asset matcher, or
+     * if there is no asset matcher and the file looks binary, meaning it
+     * contains a zero byte within its first {@link #BINARY_PROBE_SIZE} bytes.
+     * 
+     * @param path the path to locate
+     * @return the file at the path, or {@code null} if it is not an asset
+     */
+    @Override
+    public Path locateAsset(Path path) {
+        Path absPath = this.rootPath.resolve(path);
+        if (!absPath.toFile().isFile()) return null;
+
+        return this.isAsset(path, absPath) ? absPath : null;
+    }
+
+    /**
+     * Returns whether the given file, which is known to be a regular file,
+     * matches the asset matcher, or looks binary if there is no asset
+     * matcher.
+     * 
+     * @param path the path of the file, relative to the root path
+     * @param absPath the absolute path of the file
+     * @return true if the file is an asset, false otherwise, or if it cannot
+     * be read
+     * @see #locateAsset(Path)
+     */
+    boolean isAsset(Path path, Path absPath) {
+        if (this.assetMatcher != null) return this.assetMatcher.matches(path);
+
+        try (InputStream in = Files.newInputStream(absPath)) {
+            byte[] probe = in.readNBytes(BINARY_PROBE_SIZE);
+            for (byte b : probe) {
+                if (b == 0) return true;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        return false;
+    }
+
+    @Override
+    public Path locateSource(Path path) {
+        Path absPath = this.rootPath.resolve(path);
+        return absPath.toFile().isFile() ? absPath : null;
+    }
+
     @Override
     public String evaluate(Path path) throws UnmatchedPathException {
         Path absPath = this.rootPath.resolve(path);
@@ -43,4 +172,131 @@ public class RootContentProvider implements ContentProvider {
         }
     }
 
+    /**
+     * Evaluates the given path to the content at that path, memory-mapping the
+     * file if it is at least as large as the mapping threshold.
+     * <p>
+     * Mapped files that only contain ASCII are viewed as characters directly
+     * from the mapping, which stays mapped until the returned sequence is
+     * garbage collected. Other mapped files are validated once, and then
+     * decoded from the mapping a window at a time as their characters are
+     * read, so they are never decoded into the heap as a whole.
+     * 
+     * @param path the path to evaluate
+     * @return the content at the path
+     * @throws UnmatchedPathException if the given path cannot be matched to
+     * content
+     */
+    @Override
+    public CharSequence evaluateSequence(Path path)
+            throws UnmatchedPathException {
+        Path absPath = this.rootPath.resolve(path);
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(absPath,
+                    BasicFileAttributes.class);
+            if (!attributes.isRegularFile())
+                throw new UnmatchedPathException(path);
+
+            return this.readSequence(absPath, attributes.size());
+        } catch (IOException e) {
+            throw new UnmatchedPathException(path);
+        }
+    }
+
+    /**
+     * Reads the given file of the given size as characters, memory-mapping it
+     * if it is at least as large as the mapping threshold.
+     * 
+     * @param absPath the absolute path of the regular file to read
+     * @param size the size of the file
+     * @return the content of the file
+     * @throws IOException if the file cannot be read, or is not valid UTF-8
+     * @see #evaluateSequence(Path)
+     */
+    CharSequence readSequence(Path absPath, long size) throws IOException {
+        if (!this.isMapped(size)) return Files.readString(absPath);
+
+        return RootContentProvider.map(absPath, (int) size);
+    }
+
+    /**
+     * Evaluates the given path to the bytes of the file at that path, without
+     * decoding them, memory-mapping the file if it is at least as large as the
+     * mapping threshold. A mapped file stays mapped until the returned buffer
+     * is garbage collected.
+     * 
+     * @param path the path to evaluate
+     * @return the bytes of the file
+     * @throws UnmatchedPathException if the given path cannot be matched to
+     * content
+     */
+    @Override
+    public ByteBuffer evaluateBytes(Path path) throws UnmatchedPathException {
+        Path absPath = this.rootPath.resolve(path);
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(absPath,
+                    BasicFileAttributes.class);
+            if (!attributes.isRegularFile())
+                throw new UnmatchedPathException(path);
+
+            return this.readBytes(absPath, attributes.size());
+        } catch (IOException e) {
+            throw new UnmatchedPathException(path);
+        }
+    }
+
+    /**
+     * Reads the bytes of the given file of the given size, memory-mapping it
+     * if it is at least as large as the mapping threshold.
+     * 
+     * @param absPath the absolute path of the regular file to read
+     * @param size the size of the file
+     * @return the bytes of the file
+     * @throws IOException if the file cannot be read
+     * @see #evaluateBytes(Path)
+     */
+    ByteBuffer readBytes(Path absPath, long size) throws IOException {
+        if (!this.isMapped(size))
+            return ByteBuffer.wrap(Files.readAllBytes(absPath));
+
+        try (FileChannel channel = FileChannel.open(absPath)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Returns whether a file of the given size is memory-mapped when it is
+     * read.
+     * 
+     * @param size the size of the file
+     * @return true if the file is mapped, false if it is read into memory
+     */
+    private boolean isMapped(long size) {
+        return this.mappingThreshold >= 0 && size >= this.mappingThreshold
+                && size <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Maps the file at the given path and exposes it as characters.
+     * 
+     * @param absPath the path of the file
+     * @param size the size of the file
+     * @return the content of the file
+     * @throws IOException if the file cannot be mapped, or is not valid UTF-8
+     */
+    private static CharSequence map(Path absPath, int size)
+            throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(absPath)) {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if (AsciiSequence.isAscii(bytes))
+            return new AsciiSequence(bytes, 0, size);
+
+        return new Utf8Sequence(bytes);
+    }
+
 }
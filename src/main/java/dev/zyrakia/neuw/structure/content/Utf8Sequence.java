@@ -0,0 +1,205 @@
+package dev.zyrakia.neuw.structure.content;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A character sequence that views a buffer of UTF-8 bytes as characters,
+ * decoding them as they are requested instead of decoding the whole buffer up
+ * front.
+ * <p>
+ * The buffer is validated once when the sequence is created, which records the
+ * byte index of every {@link #STRIDE}th character. A character is located by
+ * decoding forward from the nearest recorded index, or from the character that
+ * was located last, so reading the sequence in order decodes every byte only
+ * once.
+ */
+final class Utf8Sequence implements CharSequence {
+
+    /**
+     * The amount of characters between recorded byte indices.
+     */
+    static final int STRIDE = 4096;
+
+    /**
+     * Represents the location of the code point that holds a character.
+     *
+     * @param chars the index of the first character of the code point
+     * @param bytes the index of the first byte of the code point
+     */
+    private record Cursor(int chars, int bytes) {}
+
+    /**
+     * The buffer holding the bytes.
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * The character index of each recorded location, in ascending order.
+     */
+    private final int[] charIndices;
+
+    /**
+     * The byte index of each recorded location.
+     */
+    private final int[] byteIndices;
+
+    /**
+     * The amount of characters the bytes decode to.
+     */
+    private final int length;
+
+    /**
+     * The location of the character that was located last.
+     */
+    private volatile Cursor cursor;
+
+    /**
+     * Creates a new sequence viewing the given buffer.
+     *
+     * @param bytes the buffer holding the bytes, from index zero to its limit
+     * @throws CharacterCodingException if the bytes are not valid UTF-8
+     */
+    Utf8Sequence(ByteBuffer bytes) throws CharacterCodingException {
+        this.bytes = bytes;
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer chunk = CharBuffer.allocate(STRIDE);
+        ByteBuffer input = bytes.duplicate().position(0);
+        int capacity = bytes.limit() / STRIDE + 2;
+        int[] charIndices = new int[capacity];
+        int[] byteIndices = new int[capacity];
+        int count = 0;
+        int chars = 0;
+
+        while (true) {
+            if (count == charIndices.length) {
+                charIndices = Arrays.copyOf(charIndices, count * 2);
+                byteIndices = Arrays.copyOf(byteIndices, count * 2);
+            }
+
+            charIndices[count] = chars;
+            byteIndices[count++] = input.position();
+
+            CoderResult result = decoder.decode(input, chunk, true);
+            if (result.isError()) result.throwException();
+            chars += chunk.position();
+            chunk.clear();
+
+            if (result.isUnderflow()) break;
+        }
+
+        CoderResult flushed = decoder.flush(chunk);
+        if (flushed.isError()) flushed.throwException();
+
+        this.charIndices = Arrays.copyOf(charIndices, count);
+        this.byteIndices = Arrays.copyOf(byteIndices, count);
+        this.length = chars;
+        this.cursor = new Cursor(0, 0);
+    }
+
+    @Override
+    public int length() { return this.length; }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length)
+            throw new IndexOutOfBoundsException(index);
+
+        Cursor start = this.cursor;
+        if (start.chars() > index || index - start.chars() >= STRIDE) {
+            int found = Arrays.binarySearch(this.charIndices, index);
+            int nearest = found >= 0 ? found : -found - 2;
+            start = new Cursor(this.charIndices[nearest],
+                    this.byteIndices[nearest]);
+        }
+
+        int chars = start.chars();
+        int position = start.bytes();
+        while (true) {
+            int lead = this.bytes.get(position) & 0xFF;
+            int width = lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3
+                    : 4;
+
+            int codePoint = width == 1 ? lead : lead & (0x7F >> width);
+            for (int i = 1; i < width; i++) {
+                codePoint = codePoint << 6 | this.bytes.get(position + i)
+                        & 0x3F;
+            }
+
+            int count = Character.charCount(codePoint);
+            if (index < chars + count) {
+                this.cursor = new Cursor(chars, position);
+                if (count == 1) return (char) codePoint;
+
+                return index == chars ? Character.highSurrogate(codePoint)
+                        : Character.lowSurrogate(codePoint);
+            }
+
+            chars += count;
+            position += width;
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > this.length || start > end)
+            throw new IndexOutOfBoundsException();
+
+        return new Slice(this, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return this.subSequence(0, this.length).toString();
+    }
+
+    /**
+     * A range of a {@link Utf8Sequence}, whose characters are decoded from
+     * the sequence as they are requested.
+     *
+     * @param sequence the sequence the range is taken from
+     * @param start the index of the first character of the range
+     * @param end the index after the last character of the range
+     */
+    private record Slice(Utf8Sequence sequence, int start, int end)
+            implements CharSequence {
+
+        @Override
+        public int length() { return this.end - this.start; }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= this.length())
+                throw new IndexOutOfBoundsException(index);
+
+            return this.sequence.charAt(this.start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > this.length() || start > end)
+                throw new IndexOutOfBoundsException();
+
+            return new Slice(this.sequence, this.start + start, this.start
+                    + end);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(this.length());
+            for (int i = this.start; i < this.end; i++) {
+                builder.append(this.sequence.charAt(i));
+            }
+
+            return builder.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package dev.zyrakia.neuw.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Utility class to count the amount of operations performed and the amount of
+ * heap memory they allocated on the threads that performed them.
+ * <p>
+ * Allocations can only be measured if the JVM supports per-thread allocation
+ * measurement, otherwise only operations are counted.
+ */
+public class AllocationCounter {
+
+    /**
+     * The thread bean used to measure allocations, or null if the JVM does not
+     * support measuring allocations.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS =
+            AllocationCounter.threads();
+
+    /**
+     * The amount of operations that have been counted.
+     */
+    private final LongAdder operations = new LongAdder();
+
+    /**
+     * The amount of bytes allocated by the counted operations.
+     */
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * Returns whether allocations can be measured on this JVM.
+     * 
+     * @return true if allocations are measured, false otherwise
+     */
+    public static boolean isSupported() { return THREADS != null; }
+
+    /**
+     * Marks the start of an operation on the current thread.
+     * 
+     * @return the marker to pass to {@link #stop(long)} once the operation has
+     * finished
+     */
+    public long start() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Marks the end of an operation on the current thread, counting it and the
+     * bytes it allocated.
+     * 
+     * @param start the marker returned by {@link #start()} when the operation
+     * started
+     */
+    public void stop(long start) {
+        this.operations.increment();
+        if (THREADS != null) this.allocatedBytes
+                .add(THREADS.getCurrentThreadAllocatedBytes() - start);
+    }
+
+    /**
+     * Returns the amount of operations that have been counted.
+     * 
+     * @return the operation count
+     */
+    public long operations() { return this.operations.sum(); }
+
+    /**
+     * Returns the amount of bytes allocated by the counted operations.
+     * 
+     * @return the allocated bytes
+     */
+    public long allocatedBytes() { return this.allocatedBytes.sum(); }
+
+    /**
+     * Returns the average amount of bytes allocated per counted operation.
+     * 
+     * @return the average allocated bytes, or 0 if nothing was counted
+     */
+    public double allocatedBytesPerOperation() {
+        long operations = this.operations();
+        return operations == 0 ? 0 : (double) this.allocatedBytes() / operations;
+    }
+
+    /**
+     * Resets the counted operations and allocations.
+     */
+    public void reset() {
+        this.operations.reset();
+        this.allocatedBytes.reset();
+    }
+
+    /**
+     * Returns the thread bean if it supports measuring allocations.
+     * 
+     * @return the thread bean, or null if allocations cannot be measured
+     */
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+
+        com.sun.management.ThreadMXBean sunThreads =
+                (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported()) return null;
+
+        sunThreads.setThreadAllocatedMemoryEnabled(true);
+        return sunThreads;
+    }
+
+}
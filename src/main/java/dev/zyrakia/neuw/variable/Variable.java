@@ -176,6 +176,14 @@ public record Variable<T>(String identifier, String name, String description,
             }
         }
 
+        /**
+         * Returns the currently set value of this variable, without falling
+         * back to the default value or validating it.
+         * 
+         * @return the set value, or null if no value is set
+         */
+        public T getValue() { return this.value; }
+
         /**
          * Evaluates the current value of this variable, if there is no valid
          * value or default value, null will be returned. If the variable is
@@ -1,7 +1,9 @@
 package dev.zyrakia.neuw.variable.ctx;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import dev.zyrakia.neuw.exception.UnsetRequiredVariableException;
@@ -25,6 +27,12 @@ public class VariableContext {
      */
     private final Map<String, Variable<?>.Instance> instances;
 
+    /**
+     * The identifiers of the variables whose value changed since the changes
+     * were last taken.
+     */
+    private final Set<String> changed = new LinkedHashSet<>();
+
     /**
      * Creates a new context that houses the given descriptors.
      * 
@@ -52,8 +60,7 @@ public class VariableContext {
      */
     public void set(String identifier, Object value)
             throws IllegalArgumentException, ValidationException {
-        Variable<?>.Instance inst = this.getInstance(identifier);
-        inst.setValue(value);
+        this.setInstance(identifier, value);
     }
 
     /**
@@ -78,6 +85,20 @@ public class VariableContext {
         return values;
     }
 
+    /**
+     * Returns the identifiers of the variables whose value changed since this
+     * method was last called, and forgets them. Setting a variable to the
+     * value it already has is not a change.
+     * 
+     * @return the identifiers of the changed variables, in the order they
+     * were first changed
+     */
+    public Set<String> takeChanges() {
+        Set<String> changes = new LinkedHashSet<>(this.changed);
+        this.changed.clear();
+        return changes;
+    }
+
     /**
      * Sets all of the variables within this context with the given
      * {@link ContextPopulator}.
@@ -90,7 +111,7 @@ public class VariableContext {
             throws ValidationException {
         for (Variable<?> descriptor : this.descriptors) {
             Object value = populator.populate(descriptor);
-            this.getInstance(descriptor.identifier()).setValue(value);
+            this.setInstance(descriptor.identifier(), value);
         }
     }
 
@@ -132,6 +153,27 @@ public class VariableContext {
         }
     }
 
+    /**
+     * Sets the variable instance associated with the given identifier to the
+     * given value, recording the identifier as changed if the value differs.
+     * 
+     * @param identifier the identifier of the variable to set
+     * @param value the value to set
+     * @throws IllegalArgumentException if the given identifier does not exist
+     * in this variable context
+     * @throws ValidationException if the given value does not match the type of
+     * the variable
+     */
+    private void setInstance(String identifier, Object value)
+            throws IllegalArgumentException, ValidationException {
+        Variable<?>.Instance inst = this.getInstance(identifier);
+        Object previous = inst.getValue();
+
+        inst.setValue(value);
+        if (!Objects.equals(previous, inst.getValue()))
+            this.changed.add(identifier);
+    }
+
     /**
      * Returns the variable instance associated with the given identifier.
      * 
@@ -0,0 +1,125 @@
+package dev.zyrakia.neuw.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies that the {@link DelimiterExpressionScanner} finds the same
+ * segments in content as in its UTF-8 encoding.
+ */
+public class DelimiterExpressionScannerTest {
+
+	/**
+	 * Scans the given content as characters, and returns the text of every
+	 * found segment, prefixed with {@code L:} or {@code E:} by its kind.
+	 *
+	 * @param scanner the scanner to scan with
+	 * @param content the content to scan
+	 * @return the found segments
+	 */
+	private static List<String> scanChars(DelimiterExpressionScanner scanner,
+			String content) {
+		List<String> segments = new ArrayList<>();
+		scanner.scan(content, new ExpressionScanner.Visitor() {
+			@Override
+			public void literal(int start, int end) {
+				segments.add("L:" + content.substring(start, end));
+			}
+
+			@Override
+			public void expression(int start, int end) {
+				segments.add("E:" + content.substring(start, end));
+			}
+		});
+
+		return segments;
+	}
+
+	/**
+	 * Scans the UTF-8 encoding of the given content, and returns the decoded
+	 * text of every found segment, prefixed with {@code L:} or {@code E:} by
+	 * its kind.
+	 *
+	 * @param scanner the scanner to scan with
+	 * @param content the content to encode and scan
+	 * @return the found segments
+	 */
+	private static List<String> scanBytes(DelimiterExpressionScanner scanner,
+			String content) {
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		List<String> segments = new ArrayList<>();
+		scanner.scan(ByteBuffer.wrap(bytes), new ExpressionScanner.Visitor() {
+			@Override
+			public void literal(int start, int end) {
+				segments.add("L:" + new String(bytes, start, end - start,
+						StandardCharsets.UTF_8));
+			}
+
+			@Override
+			public void expression(int start, int end) {
+				segments.add("E:" + new String(bytes, start, end - start,
+						StandardCharsets.UTF_8));
+			}
+		});
+
+		return segments;
+	}
+
+	/**
+	 * Asserts that scanning each of the given contents as characters and as
+	 * bytes finds the same segments.
+	 *
+	 * @param scanner the scanner to scan with
+	 * @param contents the contents to scan
+	 */
+	private static void assertSameSegments(DelimiterExpressionScanner scanner,
+			String... contents) {
+		for (String content : contents) {
+			assertEquals(DelimiterExpressionScannerTest.scanChars(scanner,
+					content), DelimiterExpressionScannerTest.scanBytes(scanner,
+							content), content);
+		}
+	}
+
+	@Test
+	public void multiByteLiterals() {
+		DelimiterExpressionScanner scanner = new DelimiterExpressionScanner(
+				"{{", "}}");
+
+		assertSameSegments(scanner, "", "plain", "héllo {{ name }} wörld",
+				"日本語{{a}}{{ b }}語", "😀{{ '😀' }}😀", "{{a}}", "ü{{ x",
+				"é}}");
+		assertEquals(List.of("L:héllo ", "E: name ", "L: wörld"), scanChars(
+				scanner, "héllo {{ name }} wörld"));
+	}
+
+	@Test
+	public void escapes() {
+		DelimiterExpressionScanner scanner = new DelimiterExpressionScanner(
+				"{{", "}}");
+
+		assertSameSegments(scanner, "é\\{{a}}ü", "é\\\\{{a}}ü",
+				"é\\\\\\{{a}}ü", "\\{{a}}", "\\\\{{a}}", "a\\b{{c}}\\",
+				"ö\\{{ unclosed", "ö\\\\{{ unclosed", "{{a}}\\{{b}}{{c}}");
+		assertEquals(List.of("L:é\\", "E:a", "L:ü"), scanChars(scanner,
+				"é\\\\{{a}}ü"));
+	}
+
+	@Test
+	public void multiByteDelimiters() {
+		DelimiterExpressionScanner scanner = new DelimiterExpressionScanner(
+				"«", "»", '§');
+
+		assertSameSegments(scanner, "ä«a»ö«b»", "§«a»é", "§§«a»é",
+				"§§§«a»é", "«unclosed ü", "x§y«z»", "«»", "»«");
+		assertEquals(List.of("L:§", "E:a", "L:é"), scanChars(scanner,
+				"§§«a»é"));
+	}
+
+}
@@ -0,0 +1,155 @@
+package dev.zyrakia.neuw.evaluation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link DelimiterExpressionScanner} with a
+ * {@link PatternExpressionScanner} that locates the same expressions, on
+ * content that is mostly literal and on content that is dense with
+ * expressions.
+ * <p>
+ * Run it after {@code mvn test-compile} through {@link #main(String[])} with
+ * the test classpath, for example with
+ * {@code mvn exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=dev.zyrakia.neuw.evaluation.ExpressionScannerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionScannerBenchmark {
+
+	/**
+	 * Counts the ranges found by a scanner, so that the scan cannot be
+	 * optimized away.
+	 */
+	private static final class CountingVisitor
+			implements ExpressionScanner.Visitor {
+
+		/**
+		 * The sum of the bounds of every found range.
+		 */
+		private long sum = 0;
+
+		@Override
+		public void literal(int start, int end) {
+			this.sum += start + end;
+		}
+
+		@Override
+		public void expression(int start, int end) {
+			this.sum -= start + end;
+		}
+
+	}
+
+	/**
+	 * Represents the shape of the scanned content, either {@code literal} for
+	 * long literal lines with an occasional expression, or {@code dense} for
+	 * short lines that each contain expressions.
+	 */
+	@Param({ "literal", "dense" })
+	public String shape;
+
+	/**
+	 * Represents the amount of lines in the scanned content.
+	 */
+	@Param({ "1000" })
+	public int lines;
+
+	/**
+	 * The content that is scanned.
+	 */
+	private String content;
+
+	/**
+	 * The delimiter scanner under test.
+	 */
+	private DelimiterExpressionScanner delimiter;
+
+	/**
+	 * The pattern scanner under test.
+	 */
+	private PatternExpressionScanner pattern;
+
+	/**
+	 * Generates the content and creates the scanners.
+	 */
+	@Setup
+	public void setup() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < this.lines; i++) {
+			if (this.shape.equals("literal")) {
+				builder.append("node_modules/some/ignored/path/").append(i)
+						.append("/*.log");
+				if (i % 100 == 0) builder.append(" {{ name }}");
+			} else {
+				builder.append("{{ a }}-{{ b.c }} = {{ d + ").append(i)
+						.append(" }}");
+			}
+
+			builder.append('\n');
+		}
+
+		this.content = builder.toString();
+		this.delimiter = new DelimiterExpressionScanner("{{", "}}");
+		this.pattern = new PatternExpressionScanner(Pattern
+				.compile("\\{\\{(.*?)\\}\\}", Pattern.DOTALL));
+	}
+
+	/**
+	 * Scans the content with the delimiter scanner.
+	 *
+	 * @param blackhole the sink of the result
+	 */
+	@Benchmark
+	public void delimiter(Blackhole blackhole) {
+		CountingVisitor visitor = new CountingVisitor();
+		this.delimiter.scan(this.content, visitor);
+		blackhole.consume(visitor.sum);
+	}
+
+	/**
+	 * Scans the content with the pattern scanner.
+	 *
+	 * @param blackhole the sink of the result
+	 */
+	@Benchmark
+	public void pattern(Blackhole blackhole) {
+		CountingVisitor visitor = new CountingVisitor();
+		this.pattern.scan(this.content, visitor);
+		blackhole.consume(visitor.sum);
+	}
+
+	/**
+	 * Runs this benchmark.
+	 *
+	 * @param args ignored
+	 * @throws RunnerException if the benchmark cannot be run
+	 */
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(ExpressionScannerBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+
+}
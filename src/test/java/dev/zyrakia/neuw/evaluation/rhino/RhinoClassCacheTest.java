@@ -0,0 +1,139 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+/**
+ * Verifies that the {@link RhinoClassCache} reuses stored entries, and treats
+ * invalid entries as missing.
+ */
+public class RhinoClassCacheTest {
+
+	/**
+	 * Compiles and executes the given script with the given cache.
+	 *
+	 * @param cache the cache to compile with
+	 * @param script the script to compile
+	 * @return the result of the script, converted to a string
+	 */
+	private static String run(RhinoClassCache cache, String script) {
+		Context cx = Context.enter();
+		try {
+			Script compiled = cache.compile(cx, script, "<test>", 0);
+			return Context.toString(compiled.exec(cx, cx
+					.initStandardObjects()));
+		} finally {
+			Context.exit();
+		}
+	}
+
+	/**
+	 * Returns the only cache entry in the given directory.
+	 *
+	 * @param directory the directory of the cache
+	 * @return the entry
+	 * @throws IOException if the directory cannot be listed
+	 */
+	private static Path entry(Path directory) throws IOException {
+		try (Stream<Path> entries = Files.list(directory)) {
+			List<Path> found = entries.toList();
+			assertEquals(1, found.size());
+			return found.get(0);
+		}
+	}
+
+	@Test
+	public void storedEntriesAreReused() throws IOException {
+		Path directory = Files.createTempDirectory("neuw-classes");
+
+		RhinoClassCache first = new RhinoClassCache(directory);
+		assertEquals("3", run(first, "1 + 2"));
+		assertEquals("3", run(first, "1 + 2"));
+		assertEquals(1, first.misses());
+		assertEquals(1, first.hits());
+
+		RhinoClassCache second = new RhinoClassCache(directory);
+		assertEquals("3", run(second, "1 + 2"));
+		assertEquals(0, second.misses());
+		assertEquals(1, second.hits());
+	}
+
+	@Test
+	public void invalidEntriesAreMisses() throws IOException {
+		Path directory = Files.createTempDirectory("neuw-classes");
+		run(new RhinoClassCache(directory), "'a' + 'b'");
+		Path entry = entry(directory);
+
+		byte[] valid = Files.readAllBytes(entry);
+		ByteArrayOutputStream oversized = new ByteArrayOutputStream();
+		try (DataOutputStream data = new DataOutputStream(oversized)) {
+			data.writeInt(1);
+			data.writeUTF("x");
+			data.writeInt(Integer.MAX_VALUE);
+		}
+
+		List<byte[]> corrupt = List.of(new byte[] { 0x7f, -1, -1, -1 },
+				new byte[] { -1, -1, -1, 0 }, Arrays.copyOf(valid, valid.length
+						/ 2), Arrays.copyOf(valid, valid.length + 1), oversized
+								.toByteArray());
+
+		for (byte[] bytes : corrupt) {
+			Files.write(entry, bytes);
+
+			RhinoClassCache cache = new RhinoClassCache(directory);
+			assertEquals("ab", run(cache, "'a' + 'b'"));
+			assertEquals(1, cache.misses());
+			assertEquals(0, cache.hits());
+		}
+	}
+
+	@Test
+	public void concurrentMissesShareOneClass() throws InterruptedException,
+			ExecutionException, IOException {
+		RhinoClassCache cache = new RhinoClassCache(Files
+				.createTempDirectory("neuw-classes"));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try {
+			List<Future<Class<?>>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> {
+					Context cx = Context.enter();
+					try {
+						return cache.compile(cx, "6 * 7", "<test>", 0)
+								.getClass();
+					} finally {
+						Context.exit();
+					}
+				}));
+			}
+
+			Class<?> first = futures.get(0).get();
+			for (Future<Class<?>> future : futures) {
+				assertEquals(first, future.get());
+			}
+
+			assertEquals(8, cache.hits() + cache.misses());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package dev.zyrakia.neuw.evaluation.rhino;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import dev.zyrakia.neuw.evaluation.CompiledTemplate;
+import dev.zyrakia.neuw.evaluation.ContentEvaluator;
+import dev.zyrakia.neuw.evaluation.DelimiterExpressionScanner;
+
+/**
+ * Verifies that templates rendered by a {@link RhinoEvaluationShell} are
+ * considered pure exactly when every expression is, whether they are compiled
+ * per expression or as a whole.
+ */
+public class RhinoEvaluationShellTest {
+
+	/**
+	 * Compiles the given content with the given evaluator.
+	 *
+	 * @param evaluator the evaluator to compile with
+	 * @param whole whether to compile the template as a whole
+	 * @param content the content to compile
+	 * @return the compiled template
+	 */
+	private static CompiledTemplate compile(ContentEvaluator evaluator,
+			boolean whole, String content) {
+		evaluator.setWholeCompilation(whole);
+		return evaluator.compile(content, "<test>");
+	}
+
+	@Test
+	public void templatePurityFollowsExpressions() {
+		RhinoEvaluationShell shell = new RhinoEvaluationShellFactory()
+				.createShell(Map.of("name", "neuw", "n", 3));
+		ContentEvaluator evaluator = new ContentEvaluator(
+				new DelimiterExpressionScanner("{{", "}}"), shell);
+
+		for (boolean whole : new boolean[] { false, true }) {
+			CompiledTemplate pure = compile(evaluator, whole,
+					"a {{ name.toUpperCase() }} b {{ name + n }}");
+			assertTrue(pure.isPure());
+			assertEquals("a NEUW b neuw3", evaluator.render(pure));
+
+			assertFalse(compile(evaluator, whole,
+					"a {{ name }} b {{ Math.random() }}").isPure());
+			assertFalse(compile(evaluator, whole, "{{ new Date() }}")
+					.isPure());
+			assertTrue(compile(evaluator, whole, "no expressions").isPure());
+		}
+	}
+
+}
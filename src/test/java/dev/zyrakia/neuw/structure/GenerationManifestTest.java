@@ -0,0 +1,124 @@
+package dev.zyrakia.neuw.structure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies how a {@link GenerationManifest} is saved, loaded and hashed.
+ */
+public class GenerationManifestTest {
+
+    @Test
+    public void entriesSurviveSaveAndLoad() throws IOException {
+        Path root = Files.createTempDirectory("neuw-manifest");
+        GenerationManifest manifest = GenerationManifest.load(root, Map.of());
+
+        String odd = "dir\\with\ttab/and\nbreak\r.txt";
+        GenerationManifest.Entry plain = new GenerationManifest.Entry("in",
+                "out", 12, 34);
+        GenerationManifest.Entry unknown = new GenerationManifest.Entry("a",
+                "", 0);
+        manifest.record("a/b.txt", plain);
+        manifest.record(odd, unknown);
+        manifest.save();
+
+        GenerationManifest loaded = GenerationManifest.load(root, Map.of());
+        assertEquals(plain, loaded.previous("a/b.txt"));
+        assertEquals(unknown, loaded.previous(odd));
+        assertNull(loaded.previous("missing"));
+    }
+
+    @Test
+    public void malformedLinesAreSkipped() throws IOException {
+        Path root = Files.createTempDirectory("neuw-manifest");
+        List<String> lines = List.of("# neuw generation manifest 2",
+                "in\tout\t12\t34\tgood.txt", "in\tout\tx\t34\tsize.txt",
+                "in\tout\t12\t\ttime.txt", "in\tout\t12", "");
+        Files.write(root.resolve(GenerationManifest.FILE_NAME), lines);
+
+        GenerationManifest manifest = GenerationManifest.load(root, Map.of());
+        assertEquals(new GenerationManifest.Entry("in", "out", 12, 34),
+                manifest.previous("good.txt"));
+        assertNull(manifest.previous("size.txt"));
+        assertNull(manifest.previous("time.txt"));
+    }
+
+    @Test
+    public void unknownVersionsAreIgnored() throws IOException {
+        Path root = Files.createTempDirectory("neuw-manifest");
+        Files.write(root.resolve(GenerationManifest.FILE_NAME), List.of(
+                "# neuw generation manifest 1", "in\tout\t12\tgood.txt"));
+
+        GenerationManifest manifest = GenerationManifest.load(root, Map.of());
+        assertNull(manifest.previous("good.txt"));
+        assertTrue(manifest.removedPaths().isEmpty());
+    }
+
+    @Test
+    public void inputHashesDistinguishTypes() throws IOException {
+        Path root = Files.createTempDirectory("neuw-manifest");
+        Set<String> references = Set.of("v");
+
+        String text = GenerationManifest.load(root, Map.of("v", "1"))
+                .inputHash("a.txt", "{{ v }}", references);
+        String number = GenerationManifest.load(root, Map.of("v", 1))
+                .inputHash("a.txt", "{{ v }}", references);
+        String bool = GenerationManifest.load(root, Map.of("v", true))
+                .inputHash("a.txt", "{{ v }}", references);
+        String word = GenerationManifest.load(root, Map.of("v", "true"))
+                .inputHash("a.txt", "{{ v }}", references);
+        String split = GenerationManifest.load(root, Map.of("v", List.of(
+                "a,s1:b"))).inputHash("a.txt", "{{ v }}", references);
+        String joined = GenerationManifest.load(root, Map.of("v", List.of(
+                "a", "b"))).inputHash("a.txt", "{{ v }}", references);
+
+        assertEquals(4, Set.of(text, number, bool, word).size());
+        assertNotEquals(split, joined);
+    }
+
+    @Test
+    public void inputHashesIgnoreMapOrder() throws IOException {
+        Path root = Files.createTempDirectory("neuw-manifest");
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("a", 1);
+        first.put("b", "2");
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("b", "2");
+        second.put("a", 1);
+
+        assertEquals(GenerationManifest.load(root, Map.of("v", first))
+                .inputHash("a.txt", "{{ v }}", null), GenerationManifest
+                        .load(root, Map.of("v", second)).inputHash("a.txt",
+                                "{{ v }}", null));
+    }
+
+    @Test
+    public void removedPathsAreReported() throws IOException {
+        Path root = Files.createTempDirectory("neuw-manifest");
+        GenerationManifest manifest = GenerationManifest.load(root, Map.of());
+        GenerationManifest.Entry entry = new GenerationManifest.Entry("in",
+                "out", 1, 1);
+        manifest.record("kept.txt", entry);
+        manifest.record("gone.txt", entry);
+        manifest.record("also/gone.txt", entry);
+        manifest.save();
+
+        GenerationManifest next = GenerationManifest.load(root, Map.of());
+        next.record("kept.txt", entry);
+        assertEquals(Set.of("also/gone.txt", "gone.txt"), next
+                .removedPaths());
+    }
+
+}
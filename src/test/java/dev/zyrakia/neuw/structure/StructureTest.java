@@ -0,0 +1,319 @@
+package dev.zyrakia.neuw.structure;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import dev.zyrakia.neuw.evaluation.ContentEvaluator;
+import dev.zyrakia.neuw.evaluation.DelimiterExpressionScanner;
+import dev.zyrakia.neuw.evaluation.rhino.RhinoEvaluationShellFactory;
+import dev.zyrakia.neuw.structure.content.ManualContentProvider;
+import dev.zyrakia.neuw.structure.content.RootContentProvider;
+
+/**
+ * Verifies how a {@link Structure} writes and rewrites its items.
+ */
+public class StructureTest {
+
+    /**
+     * Creates an evaluator of the given variables.
+     *
+     * @param variables the variables to evaluate with
+     * @return the evaluator
+     */
+    private static ContentEvaluator evaluator(Map<String, Object> variables) {
+        return new ContentEvaluator(new DelimiterExpressionScanner("{{", "}}"),
+                new RhinoEvaluationShellFactory().createShell(variables));
+    }
+
+    /**
+     * Creates a structure of nested directories and files at the given root.
+     *
+     * @param root the root to create the structure at
+     * @return the structure
+     */
+    private static Structure sample(Path root) {
+        return new Structure(root, List.of(StructureItem.file("README.md"),
+                StructureItem.dir("{{ pkg }}", StructureItem.file("a.txt"),
+                        StructureItem.dir("deep", StructureItem.dir("er",
+                                StructureItem.file("b.txt"))),
+                        StructureItem.file("{{ name }}.txt")),
+                StructureItem.dir("empty"), StructureItem.file("{{ '' }}"),
+                StructureItem.file("c.txt")));
+    }
+
+    /**
+     * Creates the provider of the content of the {@link #sample(Path)}
+     * structure.
+     *
+     * @return the provider
+     */
+    private static ManualContentProvider sampleContent() {
+        ManualContentProvider provider = new ManualContentProvider();
+        provider.set(Path.of("README.md"), "# {{ pkg }}");
+        provider.set(Path.of("app/a.txt"), "a {{ name.toUpperCase() }}");
+        provider.set(Path.of("app/deep/er/b.txt"), "ü {{ pkg }} ü");
+        provider.set(Path.of("app/n.txt"), "n");
+        provider.set(Path.of("app/m.txt"), "m");
+        provider.set(Path.of("c.txt"), "no expressions");
+        return provider;
+    }
+
+    /**
+     * Returns the variables of the {@link #sample(Path)} structure.
+     *
+     * @return the variables
+     */
+    private static Map<String, Object> sampleVariables() {
+        return new HashMap<>(Map.of("pkg", "app", "name", "n"));
+    }
+
+    /**
+     * Describes every file and directory below the given root by its relative
+     * path and content.
+     *
+     * @param root the root to describe
+     * @return the description of each path
+     * @throws IOException if the root cannot be walked
+     */
+    private static Map<String, String> snapshot(Path root) throws IOException {
+        Map<String, String> snapshot = new TreeMap<>();
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                snapshot.put(root.relativize(path).toString(), Files
+                        .isDirectory(path) ? "/" : Files.readString(path));
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Describes the given results by their relative paths and flags.
+     *
+     * @param root the root the results were written at
+     * @param results the results to describe
+     * @return the description of each result, in order
+     */
+    private static List<String> describe(Path root,
+            List<WriteResult> results) {
+        return results.stream().map((r) -> root.relativize(r.absPath()) + " "
+                + r.success() + " " + r.overwritten() + " " + r
+                        .contentWritten() + " " + r.unchanged() + " " + r
+                                .verbatim()).toList();
+    }
+
+    @Test
+    public void writeParallelMatchesWrite() throws IOException {
+        Path sequential = Files.createTempDirectory("neuw-structure");
+        Path parallel = Files.createTempDirectory("neuw-structure");
+        ManualContentProvider provider = sampleContent();
+
+        for (int i = 0; i < 2; i++) {
+            List<WriteResult> expected = sample(sequential).write(provider,
+                    evaluator(sampleVariables()));
+            List<WriteResult> actual = sample(parallel).writeParallel(
+                    provider, evaluator(sampleVariables()), 3);
+
+            assertEquals(describe(sequential, expected), describe(parallel,
+                    actual));
+            assertEquals(snapshot(sequential), snapshot(parallel));
+        }
+
+        assertEquals("a N", Files.readString(parallel.resolve("app/a.txt")));
+        assertEquals("ü app ü", Files.readString(parallel.resolve(
+                "app/deep/er/b.txt")));
+    }
+
+    @Test
+    public void writeForkJoinMatchesWrite() throws IOException {
+        Path sequential = Files.createTempDirectory("neuw-structure");
+        Path forked = Files.createTempDirectory("neuw-structure");
+        ManualContentProvider provider = sampleContent();
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                List<WriteResult> expected = sample(sequential).write(
+                        provider, evaluator(sampleVariables()));
+                List<WriteResult> actual = sample(forked).writeForkJoin(
+                        provider, evaluator(sampleVariables()), pool);
+
+                assertEquals(describe(sequential, expected), describe(
+                        forked, actual));
+                assertEquals(snapshot(sequential), snapshot(forked));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Path owned = Files.createTempDirectory("neuw-structure");
+        List<WriteResult> results = sample(owned).writeForkJoin(provider,
+                evaluator(sampleVariables()));
+        assertTrue(results.stream().allMatch(WriteResult::success));
+        assertEquals(snapshot(sequential), snapshot(owned));
+    }
+
+    /**
+     * Writes the {@link #sample(Path)} structure with a manifest, saves the
+     * manifest, and describes whether each file was left unchanged.
+     *
+     * @param root the root to write at
+     * @param provider the provider of the content
+     * @param variables the variables to write with
+     * @return whether each file was unchanged, by its relative path
+     * @throws IOException if the manifest cannot be loaded or saved
+     */
+    private static Map<String, Boolean> writeTracked(Path root,
+            ManualContentProvider provider, Map<String, Object> variables)
+            throws IOException {
+        GenerationManifest manifest = GenerationManifest.load(root,
+                variables);
+        Map<String, Boolean> unchanged = new TreeMap<>();
+
+        for (WriteResult result : sample(root).write(provider, evaluator(
+                variables), manifest)) {
+            assertTrue(result.success());
+            if (result.item().isFile()) unchanged.put(root.relativize(result
+                    .absPath()).toString(), result.unchanged());
+        }
+
+        manifest.save();
+        return unchanged;
+    }
+
+    @Test
+    public void manifestSkipsUnchangedFiles() throws IOException {
+        Path root = Files.createTempDirectory("neuw-structure");
+        ManualContentProvider provider = sampleContent();
+        Map<String, Object> variables = sampleVariables();
+
+        assertEquals(Map.of("README.md", false, "app/a.txt", false,
+                "app/deep/er/b.txt", false, "app/n.txt", false, "c.txt",
+                false), writeTracked(root, provider, variables));
+        Map<String, String> written = snapshot(root);
+
+        assertEquals(Map.of("README.md", true, "app/a.txt", true,
+                "app/deep/er/b.txt", true, "app/n.txt", true, "c.txt", true),
+                writeTracked(root, provider, variables));
+        assertEquals(written, snapshot(root));
+
+        variables.put("name", "m");
+        assertEquals(Map.of("README.md", true, "app/a.txt", false,
+                "app/deep/er/b.txt", true, "app/m.txt", false, "c.txt", true),
+                writeTracked(root, provider, variables));
+        assertEquals("a M", Files.readString(root.resolve("app/a.txt")));
+
+        Files.writeString(root.resolve("c.txt"), "edited by hand");
+        assertEquals(false, writeTracked(root, provider, variables).get(
+                "c.txt"));
+        assertEquals("no expressions", Files.readString(root.resolve(
+                "c.txt")));
+
+        provider.set(Path.of("c.txt"), "no {{ 'expressions' }}");
+        assertEquals(true, writeTracked(root, provider, variables).get(
+                "c.txt"));
+    }
+
+    @Test
+    public void manifestReportsRemovedFiles() throws IOException {
+        Path root = Files.createTempDirectory("neuw-structure");
+        ManualContentProvider provider = sampleContent();
+        Map<String, Object> variables = sampleVariables();
+        writeTracked(root, provider, variables);
+
+        variables.put("name", "m");
+        variables.put("pkg", "lib");
+        GenerationManifest manifest = GenerationManifest.load(root,
+                variables);
+        sample(root).write(provider, evaluator(variables), manifest);
+
+        assertEquals(Set.of("app/a.txt", "app/deep/er/b.txt", "app/n.txt"),
+                manifest.removedPaths());
+    }
+
+    @Test
+    public void assetsAreCopiedVerbatim() throws IOException {
+        Path source = Files.createTempDirectory("neuw-source");
+        Path root = Files.createTempDirectory("neuw-structure");
+        byte[] binary = { 1, 0, '{', '{', ' ', 'x', ' ', '}', '}' };
+        Files.write(source.resolve("image.bin"), binary);
+        Files.writeString(source.resolve("raw.txt"), "{{ name }}");
+        Files.writeString(source.resolve("page.txt"), "{{ name }}");
+
+        Structure structure = new Structure(root, List.of(StructureItem
+                .file("image.bin"), StructureItem.file("raw.txt"),
+                StructureItem.file("page.txt")));
+        structure.setSkipUnchanged(true);
+        RootContentProvider provider = new RootContentProvider(source);
+
+        List<WriteResult> probed = structure.write(provider, evaluator(
+                sampleVariables()));
+        assertTrue(probed.get(0).verbatim());
+        assertFalse(probed.get(1).verbatim());
+        assertArrayEquals(binary, Files.readAllBytes(root.resolve(
+                "image.bin")));
+        assertEquals("n", Files.readString(root.resolve("raw.txt")));
+
+        provider.setAssetMatcher(FileSystems.getDefault().getPathMatcher(
+                "glob:{raw.txt,*.bin}"));
+        Files.delete(root.resolve("raw.txt"));
+        List<WriteResult> matched = structure.write(provider, evaluator(
+                sampleVariables()));
+        assertTrue(matched.get(0).unchanged());
+        assertTrue(matched.get(1).verbatim());
+        assertFalse(matched.get(2).verbatim());
+        assertEquals("{{ name }}", Files.readString(root.resolve(
+                "raw.txt")));
+
+        List<WriteResult> again = structure.write(provider, evaluator(
+                sampleVariables()));
+        assertTrue(again.get(1).unchanged());
+        assertTrue(again.get(2).unchanged());
+    }
+
+    @Test
+    public void rewriteFollowsRenamedDirectories() throws IOException {
+        Path root = Files.createTempDirectory("neuw-structure");
+        Structure structure = new Structure(root, List.of(StructureItem.dir(
+                "{{ pkg }}", StructureItem.file("{{ name }}.txt"))));
+        ManualContentProvider provider = new ManualContentProvider();
+
+        Map<String, Object> variables = new HashMap<>(Map.of("pkg", "app",
+                "name", "a"));
+        structure.write(provider, evaluator(variables));
+        DependencyIndex index = structure.index(provider, evaluator(
+                variables));
+
+        variables.put("pkg", "lib");
+        List<WriteResult> renamed = structure.rewrite(index, Set.of("pkg"),
+                provider, evaluator(variables));
+        assertEquals(2, renamed.size());
+        assertTrue(Files.isRegularFile(root.resolve("lib/a.txt")));
+
+        variables.put("name", "b");
+        List<WriteResult> child = structure.rewrite(index, Set.of("name"),
+                provider, evaluator(variables));
+        assertEquals(1, child.size());
+        assertEquals(root.resolve("lib/b.txt"), child.get(0).absPath());
+        assertTrue(Files.isRegularFile(root.resolve("lib/b.txt")));
+        assertFalse(Files.exists(root.resolve("app/b.txt")));
+    }
+
+}
@@ -0,0 +1,149 @@
+package dev.zyrakia.neuw.structure.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import dev.zyrakia.neuw.exception.UnmatchedPathException;
+
+/**
+ * Verifies which layer of a {@link LayeredContentProvider} evaluates a path,
+ * and that files changed after indexing are read as they currently are.
+ */
+public class LayeredContentProviderTest {
+
+	/**
+	 * Creates a provider over a base and an overlay layer, both mapping every
+	 * file.
+	 *
+	 * @param base the root of the base layer
+	 * @param overlay the root of the overlay layer
+	 * @return the provider
+	 * @throws Exception if the layers cannot be indexed
+	 */
+	private static LayeredContentProvider layered(Path base, Path overlay)
+			throws Exception {
+		RootContentProvider lower = new RootContentProvider(base);
+		RootContentProvider upper = new RootContentProvider(overlay);
+		lower.setMappingThreshold(0);
+		upper.setMappingThreshold(0);
+		return new LayeredContentProvider(List.of(lower, upper));
+	}
+
+	/**
+	 * Decodes the remaining bytes of the given buffer.
+	 *
+	 * @param buffer the buffer to decode
+	 * @return the decoded content
+	 */
+	private static String decode(ByteBuffer buffer) {
+		return StandardCharsets.UTF_8.decode(buffer).toString();
+	}
+
+	@Test
+	public void laterLayersWin() throws Exception {
+		Path base = Files.createTempDirectory("neuw-base");
+		Path overlay = Files.createTempDirectory("neuw-overlay");
+		Files.createDirectories(base.resolve("dir"));
+		Files.createDirectories(overlay.resolve("dir"));
+		Files.writeString(base.resolve("a.txt"), "base a");
+		Files.writeString(base.resolve("dir/b.txt"), "base b");
+		Files.writeString(overlay.resolve("dir/b.txt"), "overlay b");
+		Files.writeString(overlay.resolve("c.txt"), "overlay c");
+
+		LayeredContentProvider provider = layered(base, overlay);
+		assertEquals("base a", provider.evaluate(Path.of("a.txt")));
+		assertEquals("overlay b", provider.evaluate(Path.of("dir/b.txt")));
+		assertEquals("overlay b", provider.evaluateSequence(Path.of(
+				"dir/b.txt")).toString());
+		assertEquals("overlay c", decode(provider.evaluateBytes(Path.of(
+				"c.txt"))));
+		assertEquals(1, provider.lookup(Path.of("dir/b.txt")).layer());
+		assertEquals(overlay.resolve("c.txt"), provider.locateSource(Path.of(
+				"c.txt")));
+	}
+
+	@Test
+	public void missingPathsAreUnmatched() throws Exception {
+		Path base = Files.createTempDirectory("neuw-base");
+		Path overlay = Files.createTempDirectory("neuw-overlay");
+		Files.createDirectories(base.resolve("dir"));
+
+		LayeredContentProvider provider = layered(base, overlay);
+		assertNull(provider.lookup(Path.of("dir")));
+		assertNull(provider.locateSource(Path.of("x.txt")));
+		assertThrows(UnmatchedPathException.class,
+				() -> provider.evaluate(Path.of("x.txt")));
+		assertThrows(UnmatchedPathException.class,
+				() -> provider.evaluateSequence(Path.of("dir")));
+		assertThrows(UnmatchedPathException.class,
+				() -> provider.evaluateBytes(Path.of("x.txt")));
+	}
+
+	@Test
+	public void changedFilesAreReadWithTheirCurrentSize() throws Exception {
+		Path base = Files.createTempDirectory("neuw-base");
+		Path overlay = Files.createTempDirectory("neuw-overlay");
+		Files.writeString(base.resolve("a.txt"), "short");
+		Files.writeString(overlay.resolve("b.txt"), "a longer file");
+
+		LayeredContentProvider provider = layered(base, overlay);
+		Files.writeString(base.resolve("a.txt"), "no longer short, ü");
+		Files.writeString(overlay.resolve("b.txt"), "short");
+
+		assertEquals("no longer short, ü", provider.evaluateSequence(Path.of(
+				"a.txt")).toString());
+		assertEquals("no longer short, ü", decode(provider.evaluateBytes(
+				Path.of("a.txt"))));
+		assertEquals("short", provider.evaluateSequence(Path.of("b.txt"))
+				.toString());
+	}
+
+	@Test
+	public void removedFilesFallBackToLowerLayers() throws Exception {
+		Path base = Files.createTempDirectory("neuw-base");
+		Path overlay = Files.createTempDirectory("neuw-overlay");
+		Files.writeString(base.resolve("a.txt"), "base");
+		Files.writeString(overlay.resolve("a.txt"), "overlay");
+		Files.writeString(overlay.resolve("b.txt"), "overlay");
+
+		LayeredContentProvider provider = layered(base, overlay);
+		Files.delete(overlay.resolve("a.txt"));
+		Files.delete(overlay.resolve("b.txt"));
+
+		assertEquals("base", provider.evaluateSequence(Path.of("a.txt"))
+				.toString());
+		assertThrows(UnmatchedPathException.class,
+				() -> provider.evaluateBytes(Path.of("b.txt")));
+	}
+
+	@Test
+	public void symbolicLinksAreFollowed() throws Exception {
+		Path base = Files.createTempDirectory("neuw-base");
+		Path overlay = Files.createTempDirectory("neuw-overlay");
+		Path target = Files.createTempDirectory("neuw-target");
+		Files.writeString(target.resolve("a.txt"), "linked");
+
+		try {
+			Files.createSymbolicLink(overlay.resolve("a.txt"), target.resolve(
+					"a.txt"));
+			Files.createSymbolicLink(base.resolve("dir"), target);
+		} catch (UnsupportedOperationException | SecurityException e) {
+			return;
+		}
+
+		LayeredContentProvider provider = layered(base, overlay);
+		assertEquals("linked", provider.evaluateSequence(Path.of("a.txt"))
+				.toString());
+		assertEquals("linked", provider.evaluate(Path.of("dir/a.txt")));
+	}
+
+}
@@ -0,0 +1,119 @@
+package dev.zyrakia.neuw.structure.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies which pattern of a {@link PathTrie} wins when several match a
+ * path, and how patterns are parsed and removed.
+ */
+public class PathTrieTest {
+
+	@Test
+	public void earlierSegmentsRankFirst() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.put("src/**", "src");
+		trie.put("**/*.ts", "ts");
+		trie.put("src/*/x.ts", "x");
+
+		assertEquals("x", trie.match(Path.of("src/a/x.ts")));
+		assertEquals("src", trie.match(Path.of("src/a/y.ts")));
+		assertEquals("src", trie.match(Path.of("src/y.ts")));
+		assertEquals("ts", trie.match(Path.of("lib/y.ts")));
+		assertNull(trie.match(Path.of("src")));
+		assertNull(trie.match(Path.of("lib/y.js")));
+	}
+
+	@Test
+	public void literalBeatsGlob() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.put("a/b.txt", "literal");
+		trie.put("a/*.txt", "glob");
+		trie.put("a/**", "any");
+
+		assertEquals("literal", trie.match(Path.of("a/b.txt")));
+		assertEquals("glob", trie.match(Path.of("a/c.txt")));
+		assertEquals("any", trie.match(Path.of("a/c.md")));
+	}
+
+	@Test
+	public void tiesPreferLiteralCharactersThenLaterPatterns() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.put("*.txt", "suffix");
+		trie.put("*", "star");
+		trie.put("?.txt", "single");
+
+		assertEquals("single", trie.match(Path.of("a.txt")));
+		assertEquals("suffix", trie.match(Path.of("ab.txt")));
+		assertEquals("star", trie.match(Path.of("ab.md")));
+
+		trie.put("*", "replaced");
+		assertEquals("replaced", trie.match(Path.of("ab.md")));
+	}
+
+	@Test
+	public void prefixesMatchDescendants() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.putPrefix(Path.of("a/b"), "prefix");
+		trie.put("a/*/c", "glob");
+
+		assertEquals("prefix", trie.match(Path.of("a/b/c")));
+		assertEquals("prefix", trie.match(Path.of("a/b/c/d")));
+		assertNull(trie.match(Path.of("a/b")));
+
+		trie.removePrefix(Path.of("a/b"));
+		assertEquals("glob", trie.match(Path.of("a/b/c")));
+		assertNull(trie.match(Path.of("a/b/c/d")));
+	}
+
+	@Test
+	public void removeKeepsOtherPatterns() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.put("a/b/c", "deep");
+		trie.put("a/b", "shallow");
+		trie.put("a/*/c", "glob");
+
+		trie.remove("a/b/c");
+		assertEquals("glob", trie.match(Path.of("a/b/c")));
+		assertEquals("shallow", trie.match(Path.of("a/b")));
+
+		trie.remove("a/*/c");
+		trie.remove("a/b");
+		assertNull(trie.match(Path.of("a/b/c")));
+		assertNull(trie.match(Path.of("a/b")));
+
+		trie.put("a/b/c", "again");
+		assertEquals("again", trie.match(Path.of("a/b/c")));
+	}
+
+	@Test
+	public void bracesWithSlashesAreExpanded() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.put("src/{main,test/java}/*.java", "java");
+		trie.put("{a,b}.txt", "text");
+
+		assertEquals("java", trie.match(Path.of("src/main/A.java")));
+		assertEquals("java", trie.match(Path.of("src/test/java/A.java")));
+		assertNull(trie.match(Path.of("src/test/A.java")));
+		assertEquals("text", trie.match(Path.of("b.txt")));
+		assertNull(trie.match(Path.of("c.txt")));
+
+		trie.remove("src/{main,test/java}/*.java");
+		assertNull(trie.match(Path.of("src/main/A.java")));
+		assertNull(trie.match(Path.of("src/test/java/A.java")));
+	}
+
+	@Test
+	public void emptyPatternsAreRejected() {
+		PathTrie<String> trie = new PathTrie<>();
+
+		assertThrows(IllegalArgumentException.class, () -> trie.put("", "x"));
+		assertThrows(IllegalArgumentException.class, () -> trie.put("/", "x"));
+	}
+
+}
@@ -0,0 +1,133 @@
+package dev.zyrakia.neuw.structure.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import dev.zyrakia.neuw.evaluation.ContentEvaluator;
+import dev.zyrakia.neuw.evaluation.DelimiterExpressionScanner;
+import dev.zyrakia.neuw.evaluation.rhino.RhinoEvaluationShellFactory;
+import dev.zyrakia.neuw.exception.UnmatchedPathException;
+
+/**
+ * Verifies that a {@link RootContentProvider} reads mapped files as the same
+ * characters as files that are read into memory.
+ */
+public class RootContentProviderTest {
+
+	/**
+	 * Builds content of mixed one to four byte characters, long enough to span
+	 * several strides of a {@link Utf8Sequence}.
+	 *
+	 * @return the content
+	 */
+	private static String multiByteContent() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < Utf8Sequence.STRIDE * 3; i++) {
+			builder.append("line ").append(i).append(
+					": é 日本語 😀 ü\n");
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Creates a provider that maps every file of the given root.
+	 *
+	 * @param root the root to provide content from
+	 * @return the provider
+	 */
+	private static RootContentProvider mapping(Path root) {
+		RootContentProvider provider = new RootContentProvider(root);
+		provider.setMappingThreshold(0);
+		return provider;
+	}
+
+	@Test
+	public void mappedMultiByteFilesDecodeInPlace() throws Exception {
+		Path root = Files.createTempDirectory("neuw-content");
+		String content = multiByteContent();
+		Files.writeString(root.resolve("a.txt"), content);
+
+		CharSequence mapped = mapping(root).evaluateSequence(Path.of("a.txt"));
+		assertTrue(mapped instanceof Utf8Sequence);
+		assertEquals(content.length(), mapped.length());
+		assertEquals(content, mapped.toString());
+
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			int index = random.nextInt(content.length());
+			assertEquals(content.charAt(index), mapped.charAt(index));
+		}
+
+		for (int i = content.length() - 1; i >= 0; i -= 97) {
+			assertEquals(content.charAt(i), mapped.charAt(i));
+		}
+
+		int start = content.indexOf('😀');
+		int end = content.lastIndexOf('日');
+		CharSequence slice = mapped.subSequence(start, end);
+		assertEquals(content.substring(start, end), slice.toString());
+		assertEquals(content.substring(start + 1, end - 1), slice.subSequence(
+				1, slice.length() - 1).toString());
+	}
+
+	@Test
+	public void mappedAsciiAndEmptyFiles() throws Exception {
+		Path root = Files.createTempDirectory("neuw-content");
+		Files.writeString(root.resolve("ascii.txt"), "plain text");
+		Files.writeString(root.resolve("empty.txt"), "");
+
+		RootContentProvider provider = mapping(root);
+		assertEquals("plain text", provider.evaluateSequence(Path.of(
+				"ascii.txt")).toString());
+		assertEquals("", provider.evaluateSequence(Path.of("empty.txt"))
+				.toString());
+	}
+
+	@Test
+	public void invalidUtf8IsUnmatched() throws Exception {
+		Path root = Files.createTempDirectory("neuw-content");
+		Files.write(root.resolve("bad.txt"), new byte[] { 'a', (byte) 0xC3,
+				'(', 'b' });
+		Files.write(root.resolve("cut.txt"), new byte[] { 'a', (byte) 0xE6,
+				(byte) 0x97 });
+
+		RootContentProvider provider = mapping(root);
+		assertThrows(UnmatchedPathException.class,
+				() -> provider.evaluateSequence(Path.of("bad.txt")));
+		assertThrows(UnmatchedPathException.class,
+				() -> provider.evaluateSequence(Path.of("cut.txt")));
+	}
+
+	@Test
+	public void mappedFilesRenderLikeReadFiles() throws Exception {
+		Path root = Files.createTempDirectory("neuw-content");
+		String content = multiByteContent() + "{{ name }} 😀 {{ name }}";
+		Files.writeString(root.resolve("t.txt"), content);
+
+		ContentEvaluator evaluator = new ContentEvaluator(
+				new DelimiterExpressionScanner("{{", "}}"),
+				new RhinoEvaluationShellFactory().createShell(Map.of("name",
+						"wörld")));
+		String expected = evaluator.evaluate(content, "t.txt");
+
+		CharSequence mapped = mapping(root).evaluateSequence(Path.of("t.txt"));
+		assertEquals(expected, evaluator.evaluate(mapped, "t.txt"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		evaluator.evaluate(mapped, "t.txt", Channels.newChannel(out));
+		assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+	}
+
+}